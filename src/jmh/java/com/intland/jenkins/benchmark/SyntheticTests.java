@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.benchmark;
+
+import com.intland.jenkins.api.dto.TrackerItemDto;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic test names and reports for the benchmarks. Test classes are spread over a package tree of the given
+ * depth, every package has up to {@link #FAN_OUT} sub packages, every class {@link #TESTS_PER_CLASS} test methods.
+ */
+final class SyntheticTests {
+    static final String ROOT_PACKAGE = "com.example";
+    static final int FAN_OUT = 8;
+    static final int TESTS_PER_CLASS = 20;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SyntheticTests() {
+    }
+
+    static String className(int classIndex, int packageDepth) {
+        StringBuilder name = new StringBuilder(ROOT_PACKAGE);
+        int rest = classIndex;
+        for (int level = 0; level < packageDepth; level++) {
+            name.append(".p").append(rest % FAN_OUT);
+            rest /= FAN_OUT;
+        }
+        return name.append(".Test").append(classIndex).toString();
+    }
+
+    static List<String> testNames(int testCount, int packageDepth) {
+        List<String> names = new ArrayList<>(testCount);
+        for (int i = 0; i < testCount; i++) {
+            names.add(className(i / TESTS_PER_CLASS, packageDepth) + ".test" + (i % TESTS_PER_CLASS));
+        }
+        return names;
+    }
+
+    static boolean isFailed(int testIndex, int failedPercent) {
+        return testIndex % 100 < failedPercent;
+    }
+
+    static String stackTrace(int testIndex, int frames) {
+        StringBuilder stackTrace = new StringBuilder("java.lang.AssertionError: expected:<" + testIndex + "> but was:<0>");
+        for (int i = 0; i < frames; i++) {
+            stackTrace.append("\n\tat com.example.support.Frame").append(i).append(".call(Frame").append(i).append(".java:").append(i + 10).append(')');
+        }
+        return stackTrace.toString();
+    }
+
+    /**
+     * Writes one JUnit report per test class into the directory.
+     *
+     * @return the report files
+     */
+    static List<File> writeReports(File directory, int testCount, int packageDepth, int failedPercent) throws IOException {
+        List<File> reports = new ArrayList<>();
+        int classCount = (testCount + TESTS_PER_CLASS - 1) / TESTS_PER_CLASS;
+        for (int classIndex = 0; classIndex < classCount; classIndex++) {
+            String className = className(classIndex, packageDepth);
+            int from = classIndex * TESTS_PER_CLASS;
+            int to = Math.min(testCount, from + TESTS_PER_CLASS);
+
+            File report = new File(directory, "TEST-" + className + ".xml");
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(report), UTF8))) {
+                out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                out.write(String.format("<testsuite name=\"%s\" tests=\"%s\" time=\"1.0\">%n", className, to - from));
+                for (int i = from; i < to; i++) {
+                    out.write(String.format("  <testcase classname=\"%s\" name=\"test%s\" time=\"0.01\">", className, i - from));
+                    if (isFailed(i, failedPercent)) {
+                        out.write(String.format("<failure message=\"expected:&lt;%s&gt;\">%s</failure>", i, stackTrace(i, 40)));
+                    }
+                    out.write("</testcase>\n");
+                }
+                out.write("</testsuite>\n");
+            }
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    /**
+     * @return the tracker items of the Test Case tree of the names, parents before their children
+     */
+    static TrackerItemDto[] trackerItems(List<String> testNames) {
+        Map<String, TrackerItemDto> items = new LinkedHashMap<>();
+        for (String testName : testNames) {
+            TrackerItemDto parent = null;
+            int start = 0;
+            while (start <= testName.length()) {
+                int end = testName.indexOf('.', start);
+                end = end < 0 ? testName.length() : end;
+                String path = testName.substring(0, end);
+
+                TrackerItemDto item = items.get(path);
+                if (item == null) {
+                    item = new TrackerItemDto("/item/" + (items.size() + 1000));
+                    item.setName(testName.substring(start, end));
+                    item.setParent(parent);
+                    items.put(path, item);
+                }
+                parent = item;
+                start = end + 1;
+            }
+        }
+        return items.values().toArray(new TrackerItemDto[items.size()]);
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.benchmark;
+
+import com.intland.jenkins.XUnitUtil;
+import com.intland.jenkins.dto.PackageFilter;
+import com.intland.jenkins.dto.TestResultItem;
+import com.intland.jenkins.dto.TestResults;
+import hudson.tasks.junit.SuiteResult;
+import hudson.tasks.junit.TestResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting parsed JUnit results into test result items, with and without package filters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TestResultsBenchmark {
+
+    @Param({"1000", "100000", "500000"})
+    private int testCount;
+
+    @Param({"3", "10"})
+    private int packageDepth;
+
+    @Param({"0", "200"})
+    private int filterCount;
+
+    private Collection<SuiteResult> suites;
+    private List<String> testNames;
+    private PackageFilter packageFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = Files.createTempDirectory("xunit-benchmark").toFile();
+        try {
+            TestResult testResult = new TestResult();
+            for (File report : SyntheticTests.writeReports(directory, testCount, packageDepth, 5)) {
+                testResult.parse(report);
+            }
+            suites = testResult.getSuites();
+        } finally {
+            SyntheticTests.deleteRecursively(directory);
+        }
+
+        testNames = SyntheticTests.testNames(testCount, packageDepth);
+        packageFilter = createPackageFilter(filterCount);
+    }
+
+    /**
+     * Includes and excludes packages of the second level, truncates the root package.
+     */
+    private static PackageFilter createPackageFilter(int filterCount) {
+        if (filterCount == 0) {
+            return new PackageFilter(new String[]{}, new String[]{}, new String[]{});
+        }
+
+        List<String> included = new ArrayList<>();
+        List<String> excluded = new ArrayList<>();
+        for (int i = 0; i < filterCount; i++) {
+            String first = SyntheticTests.ROOT_PACKAGE + ".p" + (i % SyntheticTests.FAN_OUT);
+            // packages which do not exist make the lists as long as in the jobs with many entries
+            String second = i < SyntheticTests.FAN_OUT * SyntheticTests.FAN_OUT ? ".p" + (i / SyntheticTests.FAN_OUT) : ".unused" + i;
+            if (i % 10 == 9) {
+                excluded.add(" " + first + second + ".p1");
+            } else {
+                included.add(" " + first + second);
+            }
+        }
+        return new PackageFilter(included.toArray(new String[included.size()]), excluded.toArray(new String[excluded.size()]),
+                new String[]{SyntheticTests.ROOT_PACKAGE});
+    }
+
+    @Benchmark
+    public void getTestResultItems(Blackhole blackhole) {
+        TestResults testResults = XUnitUtil.getTestResultItems(suites, packageFilter);
+        for (TestResultItem item : testResults) {
+            blackhole.consume(item);
+        }
+        blackhole.consume(testResults.getTestSummary());
+    }
+
+    @Benchmark
+    public void packageFilter(Blackhole blackhole) {
+        for (String testName : testNames) {
+            blackhole.consume(packageFilter.apply(testName));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.intland.jenkins.api.JsonEntity;
+import com.intland.jenkins.api.dto.TestRunDto;
+import com.intland.jenkins.dto.ErrorDetail;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the JSON body of a test run batch, the way the upload sends it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TestRunSerializationBenchmark {
+    private static final ObjectWriter TEST_RUNS_WRITER = new ObjectMapper().writerFor(new TypeReference<List<TestRunDto>>() {});
+
+    @Param({"50", "500"})
+    private int batchSize;
+
+    @Param({"0", "20"})
+    private int failedPercent;
+
+    @Param({"0", "8192"})
+    private int compressionThreshold;
+
+    private List<TestRunDto> testRuns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> testNames = SyntheticTests.testNames(batchSize, 5);
+        testRuns = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            boolean failed = SyntheticTests.isFailed(i, failedPercent);
+            TestRunDto testRun = new TestRunDto(testNames.get(i), 1000, 20, Collections.singletonList(2000 + i), 30,
+                    failed ? "FAILED" : "PASSED");
+            if (failed) {
+                testRun.setErrorDetail(ErrorDetail.of("expected:<" + i + "> but was:<0>", SyntheticTests.stackTrace(i, 60)));
+                testRun.setDescFormat("Wiki");
+            } else {
+                testRun.setDescription("--");
+            }
+            testRun.setTestSet(40);
+            testRun.setBuild("benchmark #1");
+            testRun.setStatus("Finished");
+            testRun.setSpentMillis(10L);
+            testRuns.add(testRun);
+        }
+    }
+
+    @Benchmark
+    public long writeBatch() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        new JsonEntity(TEST_RUNS_WRITER, testRuns, compressionThreshold).writeTo(out);
+        return out.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
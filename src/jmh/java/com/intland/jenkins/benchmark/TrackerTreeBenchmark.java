@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.benchmark;
+
+import com.intland.jenkins.XUnitUtil;
+import com.intland.jenkins.api.dto.TrackerItemDto;
+import com.intland.jenkins.dto.NodeMapping;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the Test Case tree from the fetched tracker items and resolving the test names in it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrackerTreeBenchmark {
+
+    @Param({"1000", "100000", "500000"})
+    private int testCount;
+
+    @Param({"3", "10"})
+    private int packageDepth;
+
+    private List<String> testNames;
+    private TrackerItemDto[] trackerItems;
+    private NodeMapping nodeMapping;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        testNames = SyntheticTests.testNames(testCount, packageDepth);
+        trackerItems = SyntheticTests.trackerItems(testNames);
+        nodeMapping = XUnitUtil.getNodeMapping(trackerItems);
+    }
+
+    @Benchmark
+    public NodeMapping getNodeMapping() {
+        return XUnitUtil.getNodeMapping(trackerItems);
+    }
+
+    /**
+     * The lookup of findOrCreateTrackerItemInTree when all Test Cases exist: the name is limited to the configured
+     * depth and resolved segment by segment.
+     */
+    @Benchmark
+    public void resolvePaths(Blackhole blackhole) {
+        for (String testName : testNames) {
+            int node = NodeMapping.ROOT;
+            StringTokenizer tokenizer = new StringTokenizer(XUnitUtil.limitName(testName, null, "."), ".");
+            while (tokenizer.hasMoreElements() && node != NodeMapping.NONE) {
+                node = nodeMapping.getChild(node, tokenizer.nextToken());
+            }
+            blackhole.consume(nodeMapping.getId(node));
+        }
+    }
+
+    @Benchmark
+    public void limitName(Blackhole blackhole) {
+        for (String testName : testNames) {
+            blackhole.consume(XUnitUtil.limitName(testName, 5, "."));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.benchmark;
+
+import com.intland.jenkins.markup.BuildDto;
+import com.intland.jenkins.markup.ScmDto;
+import com.intland.jenkins.markup.TestResultDto;
+import com.intland.jenkins.markup.WikiMarkupBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the wiki markup of the parent test run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WikiMarkupBenchmark {
+
+    @Param({"10", "1000"})
+    private int changeCount;
+
+    private BuildDto buildDto;
+    private TestResultDto testResultDto;
+    private ScmDto scmDto;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buildDto = new BuildDto("1.10", "https://jenkins.example.com/job/benchmark/", "https://jenkins.example.com/job/benchmark/42/",
+                "12 min", "2017-06-01 12:00", "42", "agent-1", System.currentTimeMillis(), 720000);
+        testResultDto = new TestResultDto("10 min", 100000, 250, "(+5)", 600000);
+
+        StringBuilder changes = new StringBuilder();
+        for (int i = 0; i < changeCount; i++) {
+            changes.append(String.format("* [ISSUE:%s] Fix the flaky test number %s Jane Doe (jane.doe@example.com)\n", 1000 + i, i));
+        }
+        scmDto = new ScmDto("https://codebeamer.example.com/cb/repository/7, 0123456789abcdef, branch: master", changes.toString());
+    }
+
+    @Benchmark
+    public String build() {
+        return new WikiMarkupBuilder()
+                .initWithTestReportTemplate()
+                .withBuildInfo(buildDto)
+                .withTestReportInfo(testResultDto)
+                .withScmInfo(scmDto)
+                .build();
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.loadtest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the codeBeamer REST endpoints the plugin uses, keeping the tracker items in memory.
+ *
+ * Every request waits for the configured latency (plus a random jitter), a configurable share of the requests fails
+ * with an error status before it is processed. Item pages hold at most maxPageSize items, whatever the client asks for:
+ * the plugin relies on getting the page size it asked for, a lower limit shows what it does with such a server.
+ * Requests, received and sent bytes (as on the wire, i.e. compressed) are counted per endpoint.
+ */
+public class FakeCodebeamer implements Closeable {
+    public static final String CONTEXT = "/cb";
+    private static final String REST = CONTEXT + "/rest";
+    private static final int COMPRESSION_THRESHOLD = 1024;
+    private static final String CBQL_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    private static final Pattern TRACKER_CONDITION = Pattern.compile("tracker\\.id IN \\('(\\d+)'\\)");
+    private static final Pattern SUMMARY_CONDITION = Pattern.compile("summary like '([^']*)%'");
+    private static final Pattern MODIFIED_CONDITION = Pattern.compile("modifiedAt >= '([^']*)'");
+    private static final List<String> OPEN_STATUSES = Arrays.asList((String) null, "Unset", "InProgress");
+
+    private final ObjectMapper mapper = new ObjectMapper().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    private final Random random = new Random(42);
+
+    private String version = "9.5.0";
+    private long latencyMillis;
+    private long jitterMillis;
+    private double errorRate;
+    private int errorStatus = 503;
+    private int maxPageSize = 500;
+
+    // items by id, the ids of every tracker in creation order, the ids of every tracker by name
+    private final Map<Integer, Item> items = new HashMap<>();
+    private final Map<Integer, List<Integer>> trackerItems = new HashMap<>();
+    private final Map<Integer, Map<String, List<Integer>>> trackerItemsByName = new HashMap<>();
+    private final Map<Integer, Integer> trackerTypes = new HashMap<>();
+    private int nextId = 1000;
+
+    private final ConcurrentMap<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setJitterMillis(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * @param errorRate share of the requests (0..1) answered with the error status without being processed
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setErrorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * @param typeId tracker type, e.g. 102 for Test Cases, 108 for Test Sets, 9 for Test Runs
+     */
+    public synchronized void addTracker(int trackerId, int typeId) {
+        trackerTypes.put(trackerId, typeId);
+    }
+
+    /**
+     * Creates the items of the dotted names in the tracker, like the plugin creates Test Cases, without counting requests.
+     */
+    public synchronized void addTree(int trackerId, Collection<String> fullNames) {
+        Map<String, Integer> created = new HashMap<>();
+        for (String fullName : fullNames) {
+            Integer parentId = null;
+            int start = 0;
+            while (start <= fullName.length()) {
+                int end = fullName.indexOf('.', start);
+                end = end < 0 ? fullName.length() : end;
+                String path = fullName.substring(0, end);
+
+                Integer id = created.get(path);
+                if (id == null) {
+                    id = addItem(trackerId, fullName.substring(start, end), parentId, null).id;
+                    created.put(path, id);
+                }
+                parentId = id;
+                start = end + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the base uri of the server, to be used as the codeBeamer url of the plugin
+     */
+    public String start(int threads) throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(REST, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (RuntimeException e) {
+                    respond(exchange, "error", 500, mapper.createObjectNode().put("message", String.valueOf(e)));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + CONTEXT;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : requestCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public long getRequestCount() {
+        long count = 0;
+        for (AtomicLong value : requestCounts.values()) {
+            count += value.get();
+        }
+        return count;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public synchronized int getItemCount(int trackerId) {
+        List<Integer> ids = trackerItems.get(trackerId);
+        return ids == null ? 0 : ids.size();
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath().substring(REST.length());
+        String[] segments = path.split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        JsonNode body = "GET".equals(method) ? null : readBody(exchange);
+
+        String endpoint = method + " " + endpointOf(segments);
+        requestCounts.putIfAbsent(endpoint, new AtomicLong());
+        requestCounts.get(endpoint).incrementAndGet();
+
+        waitLatency();
+        if (shouldFail()) {
+            injectedErrors.incrementAndGet();
+            respond(exchange, endpoint, errorStatus, mapper.createObjectNode().put("message", "injected error"));
+            return;
+        }
+
+        if ("GET".equals(method) && path.equals("/version")) {
+            respond(exchange, endpoint, 200, mapper.getNodeFactory().textNode(version));
+        } else if ("GET".equals(method) && segments.length == 4 && segments[1].equals("tracker") && segments[3].equals("schema")) {
+            respond(exchange, endpoint, 200, trackerSchema());
+        } else if ("GET".equals(method) && segments.length == 6 && segments[1].equals("tracker") && segments[3].equals("items") && segments[4].equals("page")) {
+            int pageSize = query.containsKey("pagesize") ? Integer.parseInt(query.get("pagesize")) : maxPageSize;
+            respond(exchange, endpoint, 200, page(trackerItems(Integer.parseInt(segments[2])), Integer.parseInt(segments[5]), pageSize));
+        } else if ("GET".equals(method) && segments.length == 8 && segments[1].equals("tracker") && segments[5].startsWith("name=")) {
+            String name = URLDecoder.decode(segments[5].substring("name=".length()), "UTF-8");
+            respond(exchange, endpoint, 200, page(itemsByName(Integer.parseInt(segments[2]), name), Integer.parseInt(segments[7]), maxPageSize));
+        } else if ("GET".equals(method) && segments.length == 3 && segments[1].equals("tracker")) {
+            Integer type = trackerType(Integer.parseInt(segments[2]));
+            if (type == null) {
+                respond(exchange, endpoint, 404, mapper.createObjectNode().put("message", "no such tracker"));
+            } else {
+                ObjectNode tracker = mapper.createObjectNode();
+                tracker.putObject("type").put("uri", "/tracker/type/" + type).put("name", "Type " + type);
+                respond(exchange, endpoint, 200, tracker);
+            }
+        } else if ("GET".equals(method) && segments.length == 4 && segments[1].equals("query") && segments[2].equals("page")) {
+            int pageSize = query.containsKey("pagesize") ? Integer.parseInt(query.get("pagesize")) : maxPageSize;
+            respond(exchange, endpoint, 200, page(query(query.get("queryString")), Integer.parseInt(segments[3]), pageSize));
+        } else if ("GET".equals(method) && segments.length == 3 && segments[1].equals("item")) {
+            Item item = getItem(Integer.parseInt(segments[2]));
+            if (item == null) {
+                respond(exchange, endpoint, 404, mapper.createObjectNode().put("message", "no such item"));
+            } else {
+                respond(exchange, endpoint, 200, toJson(item));
+            }
+        } else if ("GET".equals(method) && segments.length == 3 && (segments[1].equals("git") || segments[1].equals("svn"))) {
+            respond(exchange, endpoint, 200, mapper.createObjectNode().put("uri", "/repository/" + Math.abs(segments[2].hashCode())));
+        } else if ("POST".equals(method) && path.equals("/item")) {
+            respond(exchange, endpoint, 201, toJson(create(body)));
+        } else if ("POST".equals(method) && path.equals("/items")) {
+            ArrayNode created = mapper.createArrayNode();
+            for (JsonNode itemNode : body) {
+                created.add(toJson(create(itemNode)));
+            }
+            respond(exchange, endpoint, 201, created);
+        } else if ("PUT".equals(method) && path.equals("/item")) {
+            Item updated = null;
+            if (body.isArray()) {
+                for (JsonNode itemNode : body) {
+                    Item item = update(itemNode);
+                    updated = updated == null ? item : updated;
+                }
+            } else {
+                updated = update(body);
+            }
+            respond(exchange, endpoint, 200, updated == null ? mapper.createObjectNode() : toJson(updated));
+        } else {
+            respond(exchange, endpoint, 404, mapper.createObjectNode().put("message", "unknown endpoint"));
+        }
+    }
+
+    /**
+     * @return the path with the ids and names replaced by placeholders, e.g. /tracker/{id}/items/page/{n}
+     */
+    private static String endpointOf(String[] segments) {
+        StringBuilder endpoint = new StringBuilder();
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.matches("\\d+")) {
+                segment = segments[i - 1].equals("page") ? "{n}" : "{id}";
+            } else if (segment.startsWith("name=")) {
+                segment = "name={name}";
+            } else if (i == 2 && (segments[1].equals("git") || segments[1].equals("svn"))) {
+                segment = "{name}";
+            }
+            endpoint.append('/').append(segment);
+        }
+        return endpoint.toString();
+    }
+
+    private void waitLatency() {
+        long delay = latencyMillis;
+        if (jitterMillis > 0) {
+            synchronized (random) {
+                delay += (long) (random.nextDouble() * jitterMillis);
+            }
+        }
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean shouldFail() {
+        if (errorRate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < errorRate;
+        }
+    }
+
+    private ObjectNode trackerSchema() {
+        ObjectNode schema = mapper.createObjectNode();
+        ObjectNode type = schema.putObject("properties").putObject("type");
+        type.put("title", "Type");
+        type.putArray("enum").addObject().put("id", 1).put("name", "Automated");
+        return schema;
+    }
+
+    private ObjectNode page(List<Item> matching, int page, int pageSize) {
+        int size = Math.max(1, Math.min(pageSize, maxPageSize));
+        int from = Math.min(matching.size(), (page - 1) * size);
+        int to = Math.min(matching.size(), from + size);
+
+        ObjectNode result = mapper.createObjectNode();
+        result.put("page", page);
+        result.put("size", size);
+        result.put("total", matching.size());
+        ArrayNode itemNodes = result.putArray("items");
+        for (Item item : matching.subList(from, to)) {
+            itemNodes.add(toJson(item));
+        }
+        return result;
+    }
+
+    private synchronized List<Item> trackerItems(int trackerId) {
+        List<Item> result = new ArrayList<>();
+        List<Integer> ids = trackerItems.get(trackerId);
+        if (ids != null) {
+            for (Integer id : ids) {
+                result.add(items.get(id));
+            }
+        }
+        return result;
+    }
+
+    private synchronized List<Item> itemsByName(int trackerId, String name) {
+        List<Item> result = new ArrayList<>();
+        Map<String, List<Integer>> byName = trackerItemsByName.get(trackerId);
+        if (byName != null && byName.containsKey(name)) {
+            for (Integer id : byName.get(name)) {
+                result.add(items.get(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Understands the conditions of the queries the plugin sends: tracker, unresolved status with summary prefix and
+     * modification date.
+     */
+    private List<Item> query(String queryString) {
+        Matcher tracker = TRACKER_CONDITION.matcher(queryString);
+        if (!tracker.find()) {
+            return new ArrayList<>();
+        }
+
+        Matcher summary = SUMMARY_CONDITION.matcher(queryString);
+        String prefix = summary.find() ? summary.group(1) : null;
+        Matcher modified = MODIFIED_CONDITION.matcher(queryString);
+        long modifiedSince = 0;
+        if (modified.find()) {
+            try {
+                modifiedSince = new SimpleDateFormat(CBQL_DATE_FORMAT).parse(modified.group(1)).getTime();
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("Invalid date in query: " + queryString, e);
+            }
+        }
+
+        List<Item> result = new ArrayList<>();
+        for (Item item : trackerItems(Integer.parseInt(tracker.group(1)))) {
+            synchronized (this) {
+                if (prefix != null && (!item.name.startsWith(prefix) || !OPEN_STATUSES.contains(item.status))) {
+                    continue;
+                }
+                if (item.modifiedAt >= modifiedSince) {
+                    result.add(item);
+                }
+            }
+        }
+        return result;
+    }
+
+    private synchronized Integer trackerType(int trackerId) {
+        return trackerTypes.get(trackerId);
+    }
+
+    private synchronized Item getItem(int id) {
+        return items.get(id);
+    }
+
+    private synchronized Item create(JsonNode itemNode) {
+        Integer trackerId = idOf(itemNode.get("tracker"));
+        if (trackerId == null) {
+            throw new IllegalArgumentException("Item without tracker: " + itemNode);
+        }
+        Item item = addItem(trackerId, itemNode.path("name").asText(), idOf(itemNode.get("parent")), textOf(itemNode.get("status")));
+        applyReferences(item, itemNode);
+        return item;
+    }
+
+    private synchronized Item update(JsonNode itemNode) {
+        Item item = items.get(idOf(itemNode));
+        if (item == null) {
+            throw new IllegalArgumentException("Unknown item: " + itemNode);
+        }
+        if (itemNode.has("status")) {
+            item.status = textOf(itemNode.get("status"));
+        }
+        applyReferences(item, itemNode);
+        item.modifiedAt = System.currentTimeMillis();
+        return item;
+    }
+
+    private void applyReferences(Item item, JsonNode itemNode) {
+        if (itemNode.has("verifies")) {
+            item.verifies.clear();
+            for (JsonNode verified : itemNode.get("verifies")) {
+                item.verifies.add(idOf(verified));
+            }
+        }
+    }
+
+    private Item addItem(int trackerId, String name, Integer parentId, String status) {
+        Item item = new Item(nextId++, trackerId, name, parentId, status);
+        items.put(item.id, item);
+
+        List<Integer> ids = trackerItems.get(trackerId);
+        if (ids == null) {
+            ids = new ArrayList<>();
+            trackerItems.put(trackerId, ids);
+        }
+        ids.add(item.id);
+
+        Map<String, List<Integer>> byName = trackerItemsByName.get(trackerId);
+        if (byName == null) {
+            byName = new HashMap<>();
+            trackerItemsByName.put(trackerId, byName);
+        }
+        List<Integer> sameName = byName.get(name);
+        if (sameName == null) {
+            sameName = new ArrayList<>(1);
+            byName.put(name, sameName);
+        }
+        sameName.add(item.id);
+        return item;
+    }
+
+    private synchronized ObjectNode toJson(Item item) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("uri", "/item/" + item.id);
+        node.put("name", item.name);
+        node.putObject("tracker").put("uri", "/tracker/" + item.trackerId);
+        if (item.parentId != null) {
+            node.putObject("parent").put("uri", "/item/" + item.parentId);
+        }
+        if (item.status != null) {
+            node.putObject("status").put("name", item.status);
+        }
+        if (!item.verifies.isEmpty()) {
+            ArrayNode verifies = node.putArray("verifies");
+            for (Integer id : item.verifies) {
+                verifies.addObject().put("uri", "/item/" + id);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return the id of a reference, given as an object with uri or as the uri itself
+     */
+    private static Integer idOf(JsonNode reference) {
+        if (reference == null || reference.isNull()) {
+            return null;
+        }
+        String uri = reference.isTextual() ? reference.asText() : reference.path("uri").asText();
+        int lastSlash = uri.lastIndexOf('/');
+        return lastSlash < 0 || lastSlash == uri.length() - 1 ? null : Integer.valueOf(uri.substring(lastSlash + 1));
+    }
+
+    private static String textOf(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        return value.isTextual() ? value.asText() : value.path("name").asText(null);
+    }
+
+    private JsonNode readBody(HttpExchange exchange) throws IOException {
+        CountingInputStream counting = new CountingInputStream(exchange.getRequestBody());
+        InputStream in = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                ? new GZIPInputStream(counting) : counting;
+        try {
+            return mapper.readTree(in);
+        } finally {
+            // drain whatever the parser did not read, so the connection can be reused
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+                // discard
+            }
+            bytesReceived.addAndGet(counting.count);
+        }
+    }
+
+    private void respond(HttpExchange exchange, String endpoint, int status, JsonNode body) throws IOException {
+        byte[] content = mapper.writeValueAsBytes(body);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (content.length >= COMPRESSION_THRESHOLD && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(content);
+            }
+            content = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, content.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+        }
+        bytesSent.addAndGet(content.length);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static class Item {
+        private final int id;
+        private final int trackerId;
+        private final String name;
+        private final Integer parentId;
+        private final List<Integer> verifies = new ArrayList<>();
+        private String status;
+        private long modifiedAt = System.currentTimeMillis();
+
+        Item(int id, int trackerId, String name, Integer parentId, String status) {
+            this.id = id;
+            this.trackerId = trackerId;
+            this.name = name;
+            this.parentId = parentId;
+            this.status = status;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
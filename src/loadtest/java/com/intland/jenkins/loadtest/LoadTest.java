@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.loadtest;
+
+import com.intland.jenkins.XUnitUtil;
+import com.intland.jenkins.api.CodebeamerApiClient;
+import com.intland.jenkins.api.RestAdapter;
+import com.intland.jenkins.dto.ErrorDetail;
+import com.intland.jenkins.dto.PluginConfiguration;
+import com.intland.jenkins.dto.TestResultItem;
+import com.intland.jenkins.dto.TestResults;
+import com.intland.jenkins.dto.TestSummary;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Uploads synthetic test results to a {@link FakeCodebeamer} and reports the requests, bytes and wall time of every
+ * upload. Options are given as --name=value, e.g.
+ *
+ * <pre>--tests=100000 --depth=6 --failed=5 --existing=100 --concurrency=4 --maxBatchSize=500 --latency=30 --runs=2</pre>
+ *
+ * Uploads after the first one run against the Test Cases created before, like the builds of a job do.
+ */
+public class LoadTest {
+    private static final int TEST_SET_TRACKER_ID = 11;
+    private static final int TEST_CASE_TRACKER_ID = 12;
+    private static final int TEST_RUN_TRACKER_ID = 13;
+    private static final int BUG_TRACKER_ID = 14;
+    private static final int TEST_CONFIGURATION_ID = 1;
+    private static final int TESTS_PER_CLASS = 20;
+    private static final int FAN_OUT = 8;
+
+    private final Map<String, String> options;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                System.err.println("Options are given as --name=value, invalid option: " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        if (!new LoadTest(options).run()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return false if an upload failed
+     */
+    private boolean run() throws IOException {
+        int testCount = getInt("tests", 10000);
+        int packageDepth = getInt("depth", 5);
+        int failedPercent = getInt("failed", 5);
+        int existingPercent = getInt("existing", 0);
+        int runs = getInt("runs", 1);
+        File logFile = new File(get("log", "target/loadtest.log"));
+
+        FakeCodebeamer server = new FakeCodebeamer();
+        server.setLatencyMillis(getInt("latency", 20));
+        server.setJitterMillis(getInt("jitter", 0));
+        server.setErrorRate(Double.parseDouble(get("errorRate", "0")));
+        server.setErrorStatus(getInt("errorStatus", 503));
+        server.setMaxPageSize(getInt("pageSize", RestAdapter.PAGESIZE));
+        server.setVersion(get("version", "9.5.0"));
+        server.addTracker(TEST_SET_TRACKER_ID, 108);
+        server.addTracker(TEST_CASE_TRACKER_ID, 102);
+        server.addTracker(TEST_RUN_TRACKER_ID, 9);
+        server.addTracker(BUG_TRACKER_ID, 2);
+
+        List<String> testNames = createTestNames(testCount, packageDepth);
+        server.addTree(TEST_CASE_TRACKER_ID, testNames.subList(0, testCount * existingPercent / 100));
+
+        File parent = logFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+
+        boolean succeeded = true;
+        try (StreamTaskListener listener = new StreamTaskListener(logFile)) {
+            PluginConfiguration pluginConfiguration = createPluginConfiguration(server.start(getInt("serverThreads", 32)));
+            System.out.println(String.format("%s tests in %s classes, %s%% failed, %s%% of the Test Cases exist, latency %s ms, error rate %s",
+                    testCount, (testCount + TESTS_PER_CLASS - 1) / TESTS_PER_CLASS, failedPercent, existingPercent,
+                    get("latency", "20"), get("errorRate", "0")));
+            System.out.println(String.format("upload concurrency %s, batch size %s-%s, max batch bytes %s, compression threshold %s, log: %s",
+                    pluginConfiguration.getUploadConcurrency(), pluginConfiguration.getMinBatchSize(), pluginConfiguration.getMaxBatchSize(),
+                    pluginConfiguration.getMaxBatchBytes(), pluginConfiguration.getCompressionThreshold(), logFile));
+
+            for (int run = 1; run <= runs; run++) {
+                pluginConfiguration.setBuild("loadtest #" + run);
+                RestAdapter rest = new RestAdapter(pluginConfiguration, CodebeamerApiClient.HTTP_TIMEOUT_LONG, listener);
+                CodebeamerApiClient apiClient = new CodebeamerApiClient(pluginConfiguration, listener, CodebeamerApiClient.HTTP_TIMEOUT_LONG, rest);
+                TestResults testResults = createTestResults(testNames, failedPercent);
+
+                Map<String, Long> requestsBefore = server.getRequestCounts();
+                long receivedBefore = server.getBytesReceived();
+                long sentBefore = server.getBytesSent();
+                long errorsBefore = server.getInjectedErrors();
+                long start = System.nanoTime();
+
+                String failure = null;
+                try {
+                    apiClient.postTestRuns(testResults, "loadtest #" + run, "\n");
+                } catch (IOException | RuntimeException e) {
+                    failure = e.toString();
+                    succeeded = false;
+                }
+
+                long millis = (System.nanoTime() - start) / 1000000;
+                Map<String, Long> requests = subtract(server.getRequestCounts(), requestsBefore);
+                System.out.println(String.format("%nrun %s: %s in %.1f s, %.0f test runs/s, %s requests, %s sent, %s received, %s injected errors",
+                        run, failure == null ? "uploaded" : "FAILED (" + failure + ")", millis / 1000.0,
+                        testCount * 1000.0 / Math.max(1, millis), sum(requests),
+                        formatBytes(server.getBytesReceived() - receivedBefore), formatBytes(server.getBytesSent() - sentBefore),
+                        server.getInjectedErrors() - errorsBefore));
+                for (Map.Entry<String, Long> entry : requests.entrySet()) {
+                    System.out.println(String.format("  %8s  %s", entry.getValue(), entry.getKey()));
+                }
+            }
+            System.out.println(String.format("%nTest Cases: %s items, Test Runs: %s items",
+                    server.getItemCount(TEST_CASE_TRACKER_ID), server.getItemCount(TEST_RUN_TRACKER_ID)));
+        } finally {
+            server.close();
+        }
+        return succeeded;
+    }
+
+    private PluginConfiguration createPluginConfiguration(String uri) {
+        PluginConfiguration pluginConfiguration = new PluginConfiguration(uri, null);
+        pluginConfiguration.setTestSetTrackerId(TEST_SET_TRACKER_ID);
+        pluginConfiguration.setTestCaseTrackerId(TEST_CASE_TRACKER_ID);
+        pluginConfiguration.setTestRunTrackerId(TEST_RUN_TRACKER_ID);
+        pluginConfiguration.setTestConfigurationId(TEST_CONFIGURATION_ID);
+        pluginConfiguration.setIncludedPackages(new String[]{});
+        pluginConfiguration.setExcludedPackages(new String[]{});
+        pluginConfiguration.setTruncatePackageTree(new String[]{});
+
+        int bugs = getInt("bugs", 0);
+        if (bugs > 0) {
+            pluginConfiguration.setBugTrackerId(BUG_TRACKER_ID);
+        }
+        pluginConfiguration.setNumberOfBugsToReport(bugs);
+
+        pluginConfiguration.setUploadConcurrency(getInt("concurrency", 1));
+        pluginConfiguration.setMinBatchSize(getInt("minBatchSize", pluginConfiguration.getMinBatchSize()));
+        pluginConfiguration.setMaxBatchSize(getInt("maxBatchSize", pluginConfiguration.getMaxBatchSize()));
+        pluginConfiguration.setMaxBatchBytes(Long.parseLong(get("maxBatchBytes", String.valueOf(pluginConfiguration.getMaxBatchBytes()))));
+        pluginConfiguration.setCompressionThreshold(getInt("compressionThreshold", 0));
+        pluginConfiguration.setRequestsPerSecond(Double.parseDouble(get("requestsPerSecond", "0")));
+        pluginConfiguration.setMaxConcurrentRequests(getInt("maxConcurrentRequests", 0));
+        return pluginConfiguration;
+    }
+
+    /**
+     * Test classes spread over a package tree of the given depth, every package has up to {@link #FAN_OUT} sub packages.
+     */
+    private static List<String> createTestNames(int testCount, int packageDepth) {
+        List<String> testNames = new ArrayList<>(testCount);
+        for (int i = 0; i < testCount; i++) {
+            int classIndex = i / TESTS_PER_CLASS;
+            StringBuilder name = new StringBuilder("com.example");
+            int rest = classIndex;
+            for (int level = 0; level < packageDepth; level++) {
+                name.append(".p").append(rest % FAN_OUT);
+                rest /= FAN_OUT;
+            }
+            testNames.add(name.append(".Test").append(classIndex).append(".test").append(i % TESTS_PER_CLASS).toString());
+        }
+        return testNames;
+    }
+
+    private static TestResults createTestResults(List<String> testNames, int failedPercent) {
+        List<TestResultItem> items = new ArrayList<>(testNames.size());
+        int failCount = 0;
+        for (int i = 0; i < testNames.size(); i++) {
+            boolean failed = i % 100 < failedPercent;
+            TestResultItem item = new TestResultItem(testNames.get(i), 0.01f, !failed, failed ? XUnitUtil.FAILED_STATUS : XUnitUtil.SUCCESS_STATUS);
+            if (failed) {
+                StringBuilder stackTrace = new StringBuilder("java.lang.AssertionError: expected:<" + i + "> but was:<0>");
+                for (int frame = 0; frame < 40; frame++) {
+                    stackTrace.append("\n\tat com.example.support.Frame").append(frame).append(".call(Frame").append(frame).append(".java:10)");
+                }
+                item.setErrorDetail(ErrorDetail.of("expected:<" + i + "> but was:<0>", stackTrace.toString()));
+                failCount++;
+            }
+            items.add(item);
+        }
+
+        TestSummary summary = new TestSummary(testNames.size(), testNames.size() - failCount, failCount);
+        return new TestResults(items, summary, failCount == 0 ? XUnitUtil.SUCCESS_STATUS : XUnitUtil.FAILED_STATUS);
+    }
+
+    private static Map<String, Long> subtract(Map<String, Long> after, Map<String, Long> before) {
+        Map<String, Long> difference = new TreeMap<>();
+        for (Map.Entry<String, Long> entry : after.entrySet()) {
+            Long previous = before.get(entry.getKey());
+            long count = entry.getValue() - (previous == null ? 0 : previous);
+            if (count > 0) {
+                difference.put(entry.getKey(), count);
+            }
+        }
+        return difference;
+    }
+
+    private static long sum(Map<String, Long> counts) {
+        long sum = 0;
+        for (Long count : counts.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static String formatBytes(long bytes) {
+        return bytes < 1024 * 1024 ? String.format("%.1f KB", bytes / 1024.0) : String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private String get(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, String.valueOf(defaultValue)));
+    }
+}
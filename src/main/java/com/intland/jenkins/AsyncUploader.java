@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins;
+
+import com.intland.jenkins.api.CircuitOpenException;
+import com.intland.jenkins.api.CodebeamerApiClient;
+import com.intland.jenkins.api.RestAdapter;
+import com.intland.jenkins.dto.PluginConfiguration;
+import com.intland.jenkins.dto.TestResults;
+import hudson.AbortException;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Run;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs codeBeamer uploads on the controller after the publisher returned, so the build does not hold its executor (and
+ * agent) while waiting for codeBeamer. The number of parallel uploads can be set with the threads system property
+ * (prefixed with the name of this class).
+ *
+ * Queued and running uploads are listed in a file on the controller and resumed from their journal when Jenkins starts.
+ * While codeBeamer is not available (see {@link com.intland.jenkins.api.CircuitBreaker}) uploads are deferred, at most
+ * maxDeferrals times.
+ */
+public class AsyncUploader {
+    private static final Logger LOGGER = Logger.getLogger(AsyncUploader.class.getName());
+    private static final int THREADS = Integer.getInteger(AsyncUploader.class.getName() + ".threads", 2);
+    private static final String PENDING_FILE = "pending-uploads";
+    private static final int MAX_DEFERRALS = Integer.getInteger(AsyncUploader.class.getName() + ".maxDeferrals", 30);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Set<String> ACTIVE_RUNS = Collections.synchronizedSet(new HashSet<String>());
+    private static ExecutorService executor;
+    private static Set<String> pendingRuns; // read from the pending file once, written through on every change
+
+    private AsyncUploader() {
+    }
+
+    /**
+     * Queues the upload of a snapshot of the build, progress and outcome are reported by the {@link UploadAction} of the
+     * build.
+     */
+    public static void submit(Run<?, ?> build, UploadAction action, PluginConfiguration pluginConfiguration, TestResults testResults) {
+        ACTIVE_RUNS.add(build.getExternalizableId());
+        setPending(build.getExternalizableId(), true);
+        getExecutor().submit(new UploadTask(build, action, pluginConfiguration, testResults));
+    }
+
+    /**
+     * Queues the upload once codeBeamer is expected to be available again.
+     *
+     * @param retryAt when the upload is started
+     */
+    public static void defer(Run<?, ?> build, UploadAction action, PluginConfiguration pluginConfiguration, TestResults testResults, long retryAt) {
+        ACTIVE_RUNS.add(build.getExternalizableId());
+        setPending(build.getExternalizableId(), true);
+        action.deferred(retryAt);
+        Timer.get().schedule(new UploadTask(build, action, pluginConfiguration, testResults), Math.max(0, retryAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the upload of the build again, the test runs uploaded before are skipped by the journal of the build.
+     */
+    public static void resume(Run<?, ?> build) {
+        UploadAction action = build.getAction(UploadAction.class);
+        PluginConfiguration pluginConfiguration = null;
+        TestResults testResults = null;
+        if (action != null && action.getImporter() != null) {
+            pluginConfiguration = action.getImporter().getPluginConfiguration(build);
+            testResults = getTestResults(build, pluginConfiguration);
+        }
+        if (testResults == null) {
+            LOGGER.log(Level.WARNING, "Can not resume the codeBeamer upload of {0}, the upload or the test results are missing", build);
+            setPending(build.getExternalizableId(), false);
+            return;
+        }
+
+        action.queued();
+        submit(build, action, pluginConfiguration, testResults);
+    }
+
+    /**
+     * @return the test results parsed on the agent, or else the ones of the JUnit publisher, null if there are none
+     */
+    private static TestResults getTestResults(Run<?, ?> build, PluginConfiguration pluginConfiguration) {
+        try {
+            TestResults testResults = XUnitImporter.loadTestResults(build);
+            if (testResults != null) {
+                return testResults;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the test results of " + build, e);
+        }
+
+        AbstractTestResultAction testResultAction = build.getAction(AbstractTestResultAction.class);
+        if (testResultAction == null) {
+            return null;
+        }
+        try {
+            XUnitImporter.checkPackageFilter(pluginConfiguration);
+        } catch (AbortException e) {
+            LOGGER.log(Level.WARNING, "Can not filter the test results of {0}: {1}", new Object[]{build, e.getMessage()});
+            return null;
+        }
+        return XUnitUtil.getTestResultItems(testResultAction, pluginConfiguration);
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resumePending() {
+        for (String runId : getPendingRuns()) {
+            Run<?, ?> build = Run.fromExternalizableId(runId);
+            if (build != null) {
+                LOGGER.log(Level.INFO, "Resuming the codeBeamer upload of {0}", build);
+                resume(build);
+            } else {
+                setPending(runId, false);
+            }
+        }
+    }
+
+    /**
+     * Called whenever a build with an upload is loaded, answered from memory.
+     */
+    public static synchronized boolean isPending(Run<?, ?> build) {
+        return loadPendingRuns().contains(build.getExternalizableId());
+    }
+
+    public static boolean isActive(Run<?, ?> build) {
+        return ACTIVE_RUNS.contains(build.getExternalizableId());
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return a copy of the pending runs
+     */
+    private static synchronized Set<String> getPendingRuns() {
+        return new LinkedHashSet<>(loadPendingRuns());
+    }
+
+    private static synchronized Set<String> loadPendingRuns() {
+        if (pendingRuns != null) {
+            return pendingRuns;
+        }
+
+        File file = getPendingFile();
+        pendingRuns = new LinkedHashSet<>();
+        if (file.isFile()) {
+            try {
+                for (String line : Files.readAllLines(file.toPath(), UTF8)) {
+                    if (!line.trim().isEmpty()) {
+                        pendingRuns.add(line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+            }
+        }
+        return pendingRuns;
+    }
+
+    private static synchronized void setPending(String runId, boolean pending) {
+        Set<String> runIds = loadPendingRuns();
+        if (pending ? runIds.add(runId) : runIds.remove(runId)) {
+            File file = getPendingFile();
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), runIds, UTF8);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+            }
+        }
+    }
+
+    private static File getPendingFile() {
+        return new File(new File(Jenkins.getInstance().getRootDir(), XUnitImporter.PLUGIN_SHORTNAME), PENDING_FILE);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new NamingThreadFactory(new DaemonThreadFactory(), "codeBeamer async upload"));
+        }
+        return executor;
+    }
+
+    private static class UploadTask implements Runnable {
+        private final Run<?, ?> build;
+        private final UploadAction action;
+        private final PluginConfiguration pluginConfiguration;
+        private final TestResults testResults;
+
+        UploadTask(Run<?, ?> build, UploadAction action, PluginConfiguration pluginConfiguration, TestResults testResults) {
+            this.build = build;
+            this.action = action;
+            this.pluginConfiguration = pluginConfiguration;
+            this.testResults = testResults;
+        }
+
+        @Override
+        public void run() {
+            if (action.getStatus() == UploadAction.Status.DEFERRED) {
+                // deferred uploads wait on the timer, but run on the upload threads
+                action.queued();
+                getExecutor().submit(this);
+                return;
+            }
+
+            String runId = build.getExternalizableId();
+            boolean deferred = false;
+            try {
+                deferred = upload();
+            } finally {
+                if (!deferred) {
+                    ACTIVE_RUNS.remove(runId);
+                    setPending(runId, false);
+                }
+            }
+        }
+
+        /**
+         * @return true if the upload was deferred because codeBeamer is not available
+         */
+        private boolean upload() {
+            action.started();
+            StreamTaskListener listener = null;
+            try {
+                listener = new StreamTaskListener(action.getLogFile(), true, UTF8);
+
+                RestAdapter restAdapter = new RestAdapter(pluginConfiguration, CodebeamerApiClient.HTTP_TIMEOUT_LONG, listener);
+                CodebeamerApiClient apiClient = new CodebeamerApiClient(pluginConfiguration, listener, CodebeamerApiClient.HTTP_TIMEOUT_LONG, restAdapter);
+                if (XUnitImporter.resolveParentTrackers(pluginConfiguration, apiClient, listener)) {
+                    String parentMarkup = apiClient.resolveParentMarkup(action.getParentMarkup(), action.getScmRepository());
+                    apiClient.postTestRuns(testResults, action.getBuildIdentifier(), parentMarkup);
+                    action.finished(UploadAction.Status.FINISHED, null);
+                } else {
+                    action.finished(UploadAction.Status.FAILED, "Top node does not exist");
+                }
+            } catch (CircuitOpenException e) {
+                if (action.getDeferrals() < MAX_DEFERRALS) {
+                    XUnitUtil.log(listener, e.getMessage() + ", upload deferred");
+                    defer(build, action, pluginConfiguration, testResults, e.getRetryAt());
+                    return true;
+                }
+                XUnitUtil.log(listener, e.getMessage());
+                action.finished(UploadAction.Status.FAILED, e.getMessage());
+            } catch (Exception e) {
+                if (listener != null) {
+                    e.printStackTrace(listener.getLogger());
+                }
+                action.finished(UploadAction.Status.FAILED, e.getMessage());
+            } finally {
+                if (listener != null) {
+                    try {
+                        listener.close();
+                    } catch (IOException e) {
+                        // ignore, nothing left to log to
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
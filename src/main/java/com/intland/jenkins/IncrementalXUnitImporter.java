@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins;
+
+import com.intland.jenkins.api.CodebeamerApiClient;
+import com.intland.jenkins.api.RestAdapter;
+import com.intland.jenkins.dto.PackageFilter;
+import com.intland.jenkins.dto.PluginConfiguration;
+import com.intland.jenkins.dto.TestResults;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractProject;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildWrapperDescriptor;
+import jenkins.tasks.SimpleBuildWrapper;
+import jenkins.util.Timer;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads the test results while the tests are still running: the JUnit report files matching a pattern are picked up
+ * as soon as they are complete and their test runs are created right away, so the upload overlaps with the tests.
+ * When the wrapped steps end the remaining reports are uploaded and the parent test run and the Test Set are completed.
+ */
+public class IncrementalXUnitImporter extends SimpleBuildWrapper {
+    private static final int DEFAULT_POLL_INTERVAL = 30; // s
+
+    // the uploads of the running builds, the disposer is serialized with the build and only keeps the key
+    private static final Map<String, ReportWatcher> WATCHERS = new ConcurrentHashMap<>();
+
+    private XUnitImporter importer;
+    private String testResults;
+    private Integer pollInterval;
+
+    @DataBoundConstructor
+    public IncrementalXUnitImporter(XUnitImporter importer, String testResults) {
+        this.importer = importer;
+        this.testResults = testResults;
+    }
+
+    public XUnitImporter getImporter() {
+        return importer;
+    }
+
+    public String getTestResults() {
+        return testResults;
+    }
+
+    public Integer getPollInterval() {
+        return pollInterval;
+    }
+
+    @DataBoundSetter
+    public void setPollInterval(Integer pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public void setUp(Context context, Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener, EnvVars initialEnvironment) throws IOException, InterruptedException {
+        PluginConfiguration pluginConfiguration = importer.getPluginConfiguration(build);
+        XUnitImporter.checkPackageFilter(pluginConfiguration);
+        RestAdapter restAdapter = new RestAdapter(pluginConfiguration, CodebeamerApiClient.HTTP_TIMEOUT_LONG, listener);
+        CodebeamerApiClient apiClient = new CodebeamerApiClient(pluginConfiguration, listener, CodebeamerApiClient.HTTP_TIMEOUT_LONG, restAdapter);
+        if (!XUnitImporter.resolveParentTrackers(pluginConfiguration, apiClient, listener)) {
+            return;
+        }
+
+        String key = build.getExternalizableId();
+        // the modification times of the reports are compared on the clock of the agent
+        long notBefore = TestReportParser.toAgentTime(workspace, build.getStartTimeInMillis() - TestReportParser.FILE_TIME_MARGIN);
+        ReportWatcher watcher = new ReportWatcher(workspace, initialEnvironment.expand(testResults), notBefore,
+                pluginConfiguration.getPackageFilter(), apiClient, apiClient.createIncrementalUpload(CodebeamerApiClient.getBuildIdentifier(build)), listener);
+        WATCHERS.put(key, watcher);
+
+        int interval = pollInterval == null || pollInterval < 1 ? DEFAULT_POLL_INTERVAL : pollInterval;
+        watcher.start(interval);
+        context.setDisposer(new FinishUpload(key));
+        XUnitUtil.log(listener, String.format("Watching %s for test reports every %s s", testResults, interval));
+    }
+
+    /**
+     * Uploads the remaining reports when the wrapped steps end.
+     */
+    private static class FinishUpload extends Disposer {
+        private static final long serialVersionUID = 1L;
+
+        private final String key;
+
+        FinishUpload(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void tearDown(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+            ReportWatcher watcher = WATCHERS.remove(key);
+            if (watcher == null) {
+                // Jenkins was restarted while the tests were running
+                XUnitUtil.log(listener, "The incremental xUnit tests upload was lost, upload the test results with the post-build step instead");
+                return;
+            }
+
+            watcher.stop();
+            watcher.finish(build);
+        }
+    }
+
+    /**
+     * Polls the workspace for report files. A file is taken once it has not changed since the previous poll, the
+     * remaining files are taken when the upload finishes. Reports are parsed on the agent.
+     */
+    private static class ReportWatcher implements Runnable {
+        private final FilePath workspace;
+        private final String pattern;
+        private final long notBefore;
+        private final PackageFilter packageFilter;
+        private final CodebeamerApiClient apiClient;
+        private final CodebeamerApiClient.IncrementalUpload upload;
+        private final TaskListener listener;
+
+        private final Map<String, Long> lastModified = new HashMap<>();
+        private final Set<String> processed = new HashSet<>();
+        private ScheduledFuture<?> future;
+
+        ReportWatcher(FilePath workspace, String pattern, long notBefore, PackageFilter packageFilter,
+                      CodebeamerApiClient apiClient, CodebeamerApiClient.IncrementalUpload upload, TaskListener listener) {
+            this.workspace = workspace;
+            this.pattern = pattern;
+            this.notBefore = notBefore;
+            this.packageFilter = packageFilter;
+            this.apiClient = apiClient;
+            this.upload = upload;
+            this.listener = listener;
+        }
+
+        void start(int interval) {
+            future = Timer.get().scheduleWithFixedDelay(this, interval, interval, TimeUnit.SECONDS);
+        }
+
+        void stop() {
+            future.cancel(false);
+        }
+
+        @Override
+        public synchronized void run() {
+            try {
+                scan(false);
+                upload.flush();
+            } catch (IOException e) {
+                XUnitUtil.log(listener, "Incremental xUnit tests upload failed, retrying with the next reports: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // thrown out of the scheduled task it would silently cancel the following polls
+                XUnitUtil.log(listener, "Incremental xUnit tests upload failed, retrying with the next reports: " + e);
+                e.printStackTrace(listener.getLogger());
+            }
+        }
+
+        synchronized void finish(Run<?, ?> build) throws IOException, InterruptedException {
+            scan(true);
+            upload.finish(apiClient.createParentMarkup(build, workspace));
+        }
+
+        /**
+         * @param all take the reports which changed since the previous poll too
+         */
+        private void scan(boolean all) throws IOException, InterruptedException {
+            for (FilePath report : workspace.list(pattern)) {
+                String path = report.getRemote();
+                long modified = report.lastModified();
+                if (processed.contains(path) || modified < notBefore) {
+                    continue;
+                }
+
+                Long previous = lastModified.put(path, modified);
+                if (all || (previous != null && previous == modified)) {
+                    try {
+                        upload.add(parse(report));
+                    } catch (IOException e) {
+                        XUnitUtil.log(listener, String.format("Skipping test report %s: %s", path, e.getMessage()));
+                    }
+                    processed.add(path);
+                }
+            }
+        }
+
+        private TestResults parse(FilePath report) throws IOException, InterruptedException {
+            return report.act(new TestReportParser(null, packageFilter, 0));
+        }
+    }
+
+    @Symbol("xUnitImporterIncremental")
+    @Extension
+    public static class DescriptorImpl extends BuildWrapperDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return "Upload xUnit test results to codeBeamer while the tests are running";
+        }
+
+        @Override
+        public boolean isApplicable(AbstractProject<?, ?> item) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins;
+
+import com.intland.jenkins.dto.PackageFilter;
+import com.intland.jenkins.dto.TestResults;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import hudson.tasks.junit.TestResult;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Parses JUnit report files where they are, usually on the agent, and sends back only the filtered test names,
+ * durations, results and error details. Stdout, stderr and the rest of the result tree never reach the controller.
+ *
+ * Error details are truncated as configured for {@link com.intland.jenkins.dto.ErrorDetail} before they are sent.
+ *
+ * Like the JUnit publisher, the build start time is shifted by the difference between the clocks of the agent and the
+ * controller before it is compared with the modification time of the report files.
+ */
+public class TestReportParser extends MasterToSlaveFileCallable<TestResults> {
+    private static final long serialVersionUID = 1L;
+    public static final long FILE_TIME_MARGIN = 3000; // ms, same tolerance the JUnit publisher allows for stale reports
+
+    private final String pattern;
+    private final PackageFilter packageFilter;
+    private final long notBefore;
+    private final long controllerTime = System.currentTimeMillis();
+
+    /**
+     * @param pattern   Ant-style pattern of the report files, ignored if the callable runs on a single file
+     * @param notBefore reports modified before this time (of the controller) are left out, 0 to take all reports
+     */
+    public TestReportParser(String pattern, PackageFilter packageFilter, long notBefore) {
+        this.pattern = pattern;
+        this.packageFilter = packageFilter;
+        this.notBefore = notBefore;
+    }
+
+    /**
+     * @return the time of the controller converted to the clock of the agent of the workspace
+     */
+    public static long toAgentTime(FilePath workspace, long time) throws IOException, InterruptedException {
+        long controllerTime = System.currentTimeMillis();
+        return time + workspace.act(new AgentClock()) - controllerTime;
+    }
+
+    @Override
+    public TestResults invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        long agentNotBefore = notBefore + System.currentTimeMillis() - controllerTime;
+        TestResult testResult = new TestResult();
+        if (file.isFile()) {
+            testResult.parse(file);
+        } else {
+            for (String report : Util.createFileSet(file, pattern).getDirectoryScanner().getIncludedFiles()) {
+                File reportFile = new File(file, report);
+                if (notBefore == 0 || reportFile.lastModified() >= agentNotBefore) {
+                    testResult.parse(reportFile);
+                }
+            }
+        }
+        return XUnitUtil.getTestResultItems(testResult.getSuites(), packageFilter);
+    }
+
+    private static class AgentClock extends MasterToSlaveFileCallable<Long> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long invoke(File file, VirtualChannel channel) {
+            return System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins;
+
+import com.intland.jenkins.markup.ScmRepository;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * State and log of an asynchronous or failed codeBeamer upload, shown on the page of the build. Keeps the importer
+ * configuration and the snapshot of the build, so the upload can be resumed after a restart or a failure.
+ */
+public class UploadAction implements RunAction2 {
+    private static final Logger LOGGER = Logger.getLogger(UploadAction.class.getName());
+    public static final String LOG_FILE_NAME = "codebeamer-upload.log";
+
+    public enum Status { QUEUED, DEFERRED, RUNNING, FINISHED, FAILED }
+
+    private final XUnitImporter importer;
+    private final String buildIdentifier;
+    private final String parentMarkup;
+    private final ScmRepository scmRepository;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile String message;
+    private long queuedAt = System.currentTimeMillis();
+    private long startedAt;
+    private long finishedAt;
+    private int deferrals;
+    private transient Run<?, ?> run;
+
+    /**
+     * @param scmRepository the repository whose codeBeamer link is still missing from the parent markup, null if none
+     */
+    public UploadAction(XUnitImporter importer, String buildIdentifier, String parentMarkup, ScmRepository scmRepository) {
+        this.importer = importer;
+        this.buildIdentifier = buildIdentifier;
+        this.parentMarkup = parentMarkup;
+        this.scmRepository = scmRepository;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+        if (!isDone() && !AsyncUploader.isActive(r) && !AsyncUploader.isPending(r)) {
+            status = Status.FAILED;
+            message = "Upload was interrupted by a restart of Jenkins";
+        }
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "codeBeamer Upload";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "codebeamer-upload";
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public XUnitImporter getImporter() {
+        return importer;
+    }
+
+    public String getBuildIdentifier() {
+        return buildIdentifier;
+    }
+
+    public String getParentMarkup() {
+        return parentMarkup;
+    }
+
+    public ScmRepository getScmRepository() {
+        return scmRepository;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public int getDeferrals() {
+        return deferrals;
+    }
+
+    public boolean isDone() {
+        return status == Status.FINISHED || status == Status.FAILED;
+    }
+
+    public File getLogFile() {
+        return new File(run.getRootDir(), LOG_FILE_NAME);
+    }
+
+    public String getLog() throws IOException {
+        File logFile = getLogFile();
+        return logFile.isFile() ? Util.loadFile(logFile) : "";
+    }
+
+    public boolean isResumable() {
+        return status == Status.FAILED && importer != null && !AsyncUploader.isActive(run);
+    }
+
+    @RequirePOST
+    public HttpResponse doResume() throws IOException {
+        run.checkPermission(Item.BUILD);
+        if (isResumable()) {
+            AsyncUploader.resume(run);
+        }
+        return HttpResponses.redirectToDot();
+    }
+
+    void queued() {
+        queuedAt = System.currentTimeMillis();
+        message = null;
+        status = Status.QUEUED;
+    }
+
+    void deferred(long retryAt) {
+        deferrals++;
+        message = "codeBeamer is not available, next attempt at " + new Date(retryAt);
+        status = Status.DEFERRED;
+    }
+
+    void started() {
+        startedAt = System.currentTimeMillis();
+        message = null;
+        status = Status.RUNNING;
+    }
+
+    void finished(Status status, String message) {
+        this.finishedAt = System.currentTimeMillis();
+        this.message = message;
+        this.status = status;
+
+        try {
+            run.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + run, e);
+        }
+    }
+}
@@ -8,12 +8,19 @@ import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.intland.jenkins.api.CircuitBreaker;
+import com.intland.jenkins.api.CircuitOpenException;
 import com.intland.jenkins.api.CodebeamerApiClient;
 import com.intland.jenkins.api.RestAdapter;
 import com.intland.jenkins.api.dto.TrackerDto;
 import com.intland.jenkins.api.dto.TrackerItemDto;
+import com.intland.jenkins.dto.PackageFilter;
 import com.intland.jenkins.dto.PluginConfiguration;
 import com.intland.jenkins.dto.TestResults;
+import com.intland.jenkins.markup.ScmDataCollector;
+import com.intland.jenkins.markup.ScmDto;
+import com.intland.jenkins.markup.ScmRepository;
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -36,13 +43,20 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import javax.annotation.Nonnull;
-import java.io.IOException;
+import java.io.*;
 import java.util.Collections;
 import java.util.UUID;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 public class XUnitImporter extends Notifier implements SimpleBuildStep {
     public static final String PLUGIN_SHORTNAME = "codebeamer-xunit-importer";
+    private static final String CACHE_DIRECTORY = "tracker-cache";
+    private static final String JOURNAL_FILE = "codebeamer-upload.journal";
+    private static final String TEST_CASE_MAPPING_FILE = "codebeamer-test-cases.mapping";
+    private static final String TEST_RESULTS_FILE = "codebeamer-test-results.ser.gz";
     private String uri;
     private String credentialsId;
     private Integer testSetTrackerId;
@@ -60,6 +74,12 @@ public class XUnitImporter extends Notifier implements SimpleBuildStep {
     private String includedPackages;
     private String excludedPackages;
     private String truncatePackageTree;
+    private Integer uploadConcurrency;
+    private Integer minBatchSize;
+    private Integer maxBatchSize;
+    private Integer maxBatchBytes;
+    private Boolean asyncUpload;
+    private String testReports;
 
     @DataBoundConstructor
     public XUnitImporter(String uri, final String credentialsId, Integer testSetTrackerId, Integer testCaseTrackerId,
@@ -109,42 +129,162 @@ public class XUnitImporter extends Notifier implements SimpleBuildStep {
 
     @Override
     public void perform(@Nonnull Run<?, ?> build, @Nonnull FilePath filePath, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
-        PluginConfiguration pluginConfiguration = getPluginConfiguration(build.getParent());
+        PluginConfiguration pluginConfiguration = getPluginConfiguration(build);
+        checkPackageFilter(pluginConfiguration);
 
         RestAdapter restAdapter = new RestAdapter(pluginConfiguration, CodebeamerApiClient.HTTP_TIMEOUT_LONG, listener);
         CodebeamerApiClient apiClient = new CodebeamerApiClient(pluginConfiguration, listener, CodebeamerApiClient.HTTP_TIMEOUT_LONG, restAdapter);
 
-        if (testCaseParentId != null) {
-            TrackerItemDto trackerItemDto = apiClient.getTrackerItem(testCaseParentId);
-            if (trackerItemDto == null) {
-                XUnitUtil.log(listener, "Test Case Top Node ID item does not exist");
+        // while codeBeamer is known to be down the upload is deferred instead of waiting for timeouts
+        CircuitBreaker circuitBreaker = CircuitBreaker.get(pluginConfiguration.getUri());
+        boolean upload = !isAsyncUpload() && !circuitBreaker.isOpen();
+        if (upload) {
+            // the first requests of the build, a short timeout keeps the executor from waiting on a server that went down
+            RestAdapter lookupAdapter = new RestAdapter(pluginConfiguration, CodebeamerApiClient.HTTP_TIMEOUT_SHORT, listener);
+            CodebeamerApiClient lookupClient = new CodebeamerApiClient(pluginConfiguration, listener, CodebeamerApiClient.HTTP_TIMEOUT_SHORT, lookupAdapter);
+            try {
+                if (!resolveParentTrackers(pluginConfiguration, lookupClient, listener)) {
+                    return;
+                }
+            } catch (CircuitOpenException e) {
+                // the deferred upload resolves the trackers when it runs
+                upload = false;
+            }
+        }
+
+        TestResults testResults;
+        if (testReports != null && !testReports.trim().isEmpty()) {
+            // the reports are parsed on the agent, only the compact results are sent to the controller
+            testResults = filePath.act(new TestReportParser(testReports.trim(), pluginConfiguration.getPackageFilter(),
+                    build.getStartTimeInMillis() - TestReportParser.FILE_TIME_MARGIN));
+            if (testResults.getTestSummary().getTestCount() == 0) {
+                XUnitUtil.log(listener, "No test results found in " + testReports + ", aborting...");
+                return;
+            }
+            // kept with the build, so the upload can be resumed without the workspace
+            saveTestResults(build, testResults);
+        } else {
+            AbstractTestResultAction action = build.getAction(AbstractTestResultAction.class);
+            if (action == null) {
+                // previous step failed to execute, e.g. no test report files found
+                XUnitUtil.log(listener, "Previous action failed, aborting...");
                 return;
             }
 
-            pluginConfiguration.setTestCaseTrackerId(trackerItemDto.getTracker().getId());
+            testResults = XUnitUtil.getTestResultItems(action, pluginConfiguration);
         }
 
-        if (requirementParentId != null) {
-            TrackerItemDto trackerItemDto = apiClient.getTrackerItem(requirementParentId);
-            if (trackerItemDto == null) {
-                XUnitUtil.log(listener, "Requirement Top Node ID item does not exist");
-                return;
+        // everything needing the build or its agent is collected now, so the upload can be resumed later
+        String buildIdentifier = CodebeamerApiClient.getBuildIdentifier(build);
+        ScmDto scmDto = ScmDataCollector.collectScmData(build);
+        String parentMarkup = apiClient.collectParentMarkup(build, filePath, scmDto);
+        ScmRepository scmRepository = scmDto.getRepository();
+        if (upload) {
+            // asynchronous and deferred uploads look it up on the upload threads, not on the executor of the build
+            try {
+                parentMarkup = apiClient.resolveParentMarkup(parentMarkup, scmRepository);
+                scmRepository = null;
+            } catch (CircuitOpenException e) {
+                // looked up when the deferred upload runs
             }
-            pluginConfiguration.setRequirementTrackerId(trackerItemDto.getTracker().getId());
         }
+        UploadAction uploadAction = new UploadAction(this, buildIdentifier, parentMarkup, scmRepository);
+
+        if (isAsyncUpload()) {
+            build.addAction(uploadAction);
+            AsyncUploader.submit(build, uploadAction, pluginConfiguration, testResults);
+            XUnitUtil.log(listener, "xUnit tests upload queued, see the codeBeamer Upload page of the build for its progress");
+        } else if (!upload) {
+            build.addAction(uploadAction);
+            AsyncUploader.defer(build, uploadAction, pluginConfiguration, testResults, circuitBreaker.getRetryAt());
+            XUnitUtil.log(listener, "codeBeamer is not available, xUnit tests upload deferred, see the codeBeamer Upload page of the build for its progress");
+        } else {
+            try {
+                apiClient.postTestRuns(testResults, buildIdentifier, parentMarkup);
+            } catch (CircuitOpenException e) {
+                build.addAction(uploadAction);
+                AsyncUploader.defer(build, uploadAction, pluginConfiguration, testResults, e.getRetryAt());
+                XUnitUtil.log(listener, e.getMessage() + ", xUnit tests upload deferred, see the codeBeamer Upload page of the build for its progress");
+            } catch (IOException e) {
+                // the journal of the build keeps what was uploaded, the rest can be uploaded from the build page
+                build.addAction(uploadAction);
+                uploadAction.finished(UploadAction.Status.FAILED, e.getMessage());
+                throw e;
+            }
+        }
+    }
 
+    /**
+     * @return the configuration of the upload of the build, with the tracker cache, the upload journal and the test case
+     * mapping of the job set
+     */
+    public PluginConfiguration getPluginConfiguration(Run<?, ?> build) {
+        PluginConfiguration pluginConfiguration = getPluginConfiguration(build.getParent());
+        pluginConfiguration.setCacheDirectory(new File(new File(Jenkins.getInstance().getRootDir(), PLUGIN_SHORTNAME), CACHE_DIRECTORY));
+        pluginConfiguration.setJournalFile(new File(build.getRootDir(), JOURNAL_FILE));
+        pluginConfiguration.setTestCaseMappingFile(new File(build.getParent().getRootDir(), TEST_CASE_MAPPING_FILE));
+        return pluginConfiguration;
+    }
 
-        AbstractTestResultAction action = build.getAction(AbstractTestResultAction.class);
-        if (action == null) {
-            // previous step failed to execute, e.g. no test report files found
-            XUnitUtil.log(listener, "Previous action failed, aborting...");
-            return;
+    static void saveTestResults(Run<?, ?> build, TestResults testResults) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(new File(build.getRootDir(), TEST_RESULTS_FILE))))) {
+            out.writeObject(testResults);
         }
+    }
 
-        TestResults testResults = XUnitUtil.getTestResultItems(action, pluginConfiguration);
+    /**
+     * @return the test results parsed on the agent, null if the build has none
+     */
+    static TestResults loadTestResults(Run<?, ?> build) throws IOException {
+        File file = new File(build.getRootDir(), TEST_RESULTS_FILE);
+        if (!file.isFile()) {
+            return null;
+        }
 
-        apiClient.postTestRuns(testResults, build, filePath);
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new FileInputStream(file)))) {
+            return (TestResults) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
 
+    /**
+     * Builds the package filter before the upload starts. Pipeline and JCasC skip the form validation, an invalid
+     * pattern set there ends the build with its description instead of a stack trace.
+     */
+    static void checkPackageFilter(PluginConfiguration pluginConfiguration) throws AbortException {
+        try {
+            pluginConfiguration.getPackageFilter();
+        } catch (PatternSyntaxException e) {
+            throw new AbortException(String.format("Invalid package pattern %s: %s", e.getPattern(), e.getDescription()));
+        }
+    }
+
+    /**
+     * Sets the Test Case and Requirement trackers from the configured top nodes.
+     *
+     * @return false if a top node does not exist
+     */
+    static boolean resolveParentTrackers(PluginConfiguration pluginConfiguration, CodebeamerApiClient apiClient, TaskListener listener) throws IOException {
+        if (pluginConfiguration.getTestCaseParentId() != null) {
+            TrackerItemDto trackerItemDto = apiClient.getTrackerItem(pluginConfiguration.getTestCaseParentId());
+            if (trackerItemDto == null) {
+                XUnitUtil.log(listener, "Test Case Top Node ID item does not exist");
+                return false;
+            }
+
+            pluginConfiguration.setTestCaseTrackerId(trackerItemDto.getTracker().getId());
+        }
+
+        if (pluginConfiguration.getRequirementParentId() != null) {
+            TrackerItemDto trackerItemDto = apiClient.getTrackerItem(pluginConfiguration.getRequirementParentId());
+            if (trackerItemDto == null) {
+                XUnitUtil.log(listener, "Requirement Top Node ID item does not exist");
+                return false;
+            }
+            pluginConfiguration.setRequirementTrackerId(trackerItemDto.getTracker().getId());
+        }
+        return true;
     }
 
     // Getter for jenkins UI
@@ -271,6 +411,60 @@ public class XUnitImporter extends Notifier implements SimpleBuildStep {
         this.build = build;
     }
 
+    public Integer getUploadConcurrency() {
+        return uploadConcurrency;
+    }
+
+    @DataBoundSetter
+    public void setUploadConcurrency(Integer uploadConcurrency) {
+        this.uploadConcurrency = uploadConcurrency;
+    }
+
+    public Integer getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    @DataBoundSetter
+    public void setMinBatchSize(Integer minBatchSize) {
+        this.minBatchSize = minBatchSize;
+    }
+
+    public Integer getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @DataBoundSetter
+    public void setMaxBatchSize(Integer maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public Integer getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxBatchBytes(Integer maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public boolean isAsyncUpload() {
+        return asyncUpload != null && asyncUpload;
+    }
+
+    @DataBoundSetter
+    public void setAsyncUpload(boolean asyncUpload) {
+        this.asyncUpload = asyncUpload;
+    }
+
+    public String getTestReports() {
+        return testReports;
+    }
+
+    @DataBoundSetter
+    public void setTestReports(String testReports) {
+        this.testReports = testReports;
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
@@ -295,6 +489,17 @@ public class XUnitImporter extends Notifier implements SimpleBuildStep {
         pluginConfiguration.setIncludedPackages(includedPackages == null || includedPackages.trim().equals("") ? new String[]{} : includedPackages.split(";"));
         pluginConfiguration.setExcludedPackages(excludedPackages == null || excludedPackages.trim().equals("") ? new String[]{} : excludedPackages.split(";"));
         pluginConfiguration.setTruncatePackageTree(truncatePackageTree == null || truncatePackageTree.trim().equals("") ? new String[]{} : truncatePackageTree.split(";"));
+        pluginConfiguration.setUploadConcurrency(uploadConcurrency == null || uploadConcurrency < 1 ? 1 : uploadConcurrency);
+        pluginConfiguration.setMinBatchSize(minBatchSize == null || minBatchSize < 1 ? PluginConfiguration.DEFAULT_MIN_BATCH_SIZE : minBatchSize);
+        pluginConfiguration.setMaxBatchSize(maxBatchSize == null || maxBatchSize < 1 ? PluginConfiguration.DEFAULT_MAX_BATCH_SIZE : maxBatchSize);
+        pluginConfiguration.setMaxBatchBytes(maxBatchBytes == null || maxBatchBytes < 1 ? PluginConfiguration.DEFAULT_MAX_BATCH_BYTES : maxBatchBytes);
+
+        XUnitImporterConfiguration globalConfiguration = XUnitImporterConfiguration.get();
+        if (globalConfiguration != null) {
+            pluginConfiguration.setRequestsPerSecond(globalConfiguration.getRequestsPerSecond());
+            pluginConfiguration.setMaxConcurrentRequests(globalConfiguration.getMaxConcurrentRequests());
+            pluginConfiguration.setCompressionThreshold(globalConfiguration.getCompressionThreshold());
+        }
         return pluginConfiguration;
     }
 
@@ -399,6 +604,34 @@ public class XUnitImporter extends Notifier implements SimpleBuildStep {
             return validateTrackerType(value, new PluginConfiguration(uri, XUnitUtil.getCredentials(new FreeStyleProject(Jenkins.getInstance(), "fake-" + UUID.randomUUID().toString()), credentialsId)), false, 2);
         }
 
+        @SuppressWarnings("unused")
+        public FormValidation doCheckIncludedPackages(@QueryParameter String value) {
+            return validatePackages(value);
+        }
+
+        @SuppressWarnings("unused")
+        public FormValidation doCheckExcludedPackages(@QueryParameter String value) {
+            return validatePackages(value);
+        }
+
+        @SuppressWarnings("unused")
+        public FormValidation doCheckTruncatePackageTree(@QueryParameter String value) {
+            return validatePackages(value);
+        }
+
+        private FormValidation validatePackages(String value) {
+            if (value == null || value.trim().equals("")) {
+                return FormValidation.ok();
+            }
+
+            try {
+                new PackageFilter(value.split(";"), new String[]{}, new String[]{});
+                return FormValidation.ok();
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error("Invalid pattern: " + e.getDescription());
+            }
+        }
+
         private FormValidation validateTrackerItemWithTracker(Integer value, PluginConfiguration pluginConfiguration, boolean required, Integer... validTrackerTypeIds) {
             FormValidation result = FormValidation.ok();
             if (value != null) {
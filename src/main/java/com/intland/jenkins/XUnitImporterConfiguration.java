@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins;
+
+import hudson.Extension;
+import jenkins.model.GlobalConfiguration;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Controller wide settings shared by every job uploading to codeBeamer.
+ */
+@Extension
+public class XUnitImporterConfiguration extends GlobalConfiguration {
+    private Double requestsPerSecond;
+    private Integer maxConcurrentRequests;
+    private Integer compressionThreshold;
+
+    public XUnitImporterConfiguration() {
+        load();
+    }
+
+    public static XUnitImporterConfiguration get() {
+        return GlobalConfiguration.all().get(XUnitImporterConfiguration.class);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Codebeamer xUnit Importer";
+    }
+
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        requestsPerSecond = null;
+        maxConcurrentRequests = null;
+        compressionThreshold = null;
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    /**
+     * @return requests per second sent to one codeBeamer server by all jobs, 0 if unlimited
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond == null || requestsPerSecond < 0 ? 0 : requestsPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setRequestsPerSecond(Double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * @return requests in flight to one codeBeamer server from all jobs, 0 if unlimited
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests == null || maxConcurrentRequests < 0 ? 0 : maxConcurrentRequests;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return request bodies of at least this many bytes are sent gzipped, 0 to never compress
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold == null || compressionThreshold < 0 ? 0 : compressionThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCompressionThreshold(Integer compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+}
@@ -7,6 +7,7 @@ import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.intland.jenkins.api.TrackerTreeBuilder;
 import com.intland.jenkins.api.dto.TrackerItemDto;
 import com.intland.jenkins.dto.*;
 import hudson.model.Item;
@@ -25,87 +26,78 @@ import java.util.*;
 
 public class XUnitUtil {
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-    private static final String SUCCESS_STATUS = "Passed";
-    private static final String FAILED_STATUS = "Failed";
+    public static final String SUCCESS_STATUS = "Passed";
+    public static final String FAILED_STATUS = "Failed";
 
     public static TestResults getTestResultItems(AbstractTestResultAction action, PluginConfiguration pluginConfiguration) {
-        List<TestResultItem> cbCases = new ArrayList<>();
+        return getTestResultItems(getSuiteResultsFromAction(action), pluginConfiguration.getPackageFilter());
+    }
+
+    /**
+     * Counts the tests once for the summary, the items themselves are created suite by suite whenever the returned
+     * results are iterated, so they never have to be in memory all at once.
+     */
+    public static TestResults getTestResultItems(final Iterable<SuiteResult> suiteResults, final PackageFilter packageFilter) {
         int testCount = 0;
         int successCount = 0;
         int failCount = 0;
-        for (SuiteResult suiteResult : getSuiteResultsFromAction(action)) {
-            Collection<CaseResult> cases = suiteResult.getCases();
-            for (CaseResult caseResult : cases) {
-                String name = caseResult.getFullName();
-                if (isAllowedByPackageFilters(name, pluginConfiguration)) {
-                    for (String truncatePackage : pluginConfiguration.getTruncatePackageTree()) {
-                        if (name.startsWith(truncatePackage.trim())) {
-                            name = name.substring(truncatePackage.length() + 1);
-                            break;
-                        }
-                    }
-
-                    boolean passed = caseResult.getFailCount() == 0;
-                    TestResultItem testResultItem = new TestResultItem(name, caseResult.getDuration(),
-                                                                passed, passed ? SUCCESS_STATUS : FAILED_STATUS);
-
-                    if (passed) {
+        for (SuiteResult suiteResult : suiteResults) {
+            for (CaseResult caseResult : suiteResult.getCases()) {
+                if (packageFilter.isAllowed(caseResult.getFullName())) {
+                    if (caseResult.getFailCount() == 0) {
                         successCount++;
                     } else {
-                        testResultItem.setErrorDetail(String.format("%s\n%s", caseResult.getErrorDetails(), caseResult.getErrorStackTrace()));
                         failCount++;
                     }
-
-                    cbCases.add(testResultItem);
                     testCount++;
                 }
             }
         }
 
+        Iterable<TestResultItem> cbCases = new Iterable<TestResultItem>() {
+            @Override
+            public Iterator<TestResultItem> iterator() {
+                return new TestResultItemIterator(suiteResults.iterator(), packageFilter);
+            }
+        };
+
         String overallStatus = failCount == 0 ? SUCCESS_STATUS : FAILED_STATUS;
         return new TestResults(cbCases, new TestSummary(testCount, successCount, failCount), overallStatus);
     }
 
-    public static NodeMapping getNodeMapping(TrackerItemDto[] trackerItems) {
-        Arrays.sort(trackerItems, new Comparator<TrackerItemDto>() {
-            @Override
-            public int compare(TrackerItemDto o1, TrackerItemDto o2) {
-                return o1.getId().intValue() - o2.getId().intValue();
-            }
-        });
-
-        Map<Integer, String> idNodeMapping = new HashMap<>();
-        Map<String, Integer> nodeIdMapping = new HashMap<>();
-        for (TrackerItemDto trackerItem : trackerItems) {
-            Integer key = trackerItem.getId();
-            String value;
+    private static TestResultItem createTestResultItem(CaseResult caseResult, String name) {
+        boolean passed = caseResult.getFailCount() == 0;
+        TestResultItem testResultItem = new TestResultItem(name, caseResult.getDuration(),
+                                                    passed, passed ? SUCCESS_STATUS : FAILED_STATUS);
+        if (!passed) {
+            testResultItem.setErrorDetail(getErrorDetail(caseResult));
+        }
+        return testResultItem;
+    }
 
-            if (trackerItem.getParent() == null) {
-                value = trackerItem.getName();
-            } else {
-                value = idNodeMapping.get(trackerItem.getParent().getId()) + "." + trackerItem.getName();
+    /**
+     * @return the error of the case, read from the case whenever it is needed
+     */
+    private static ErrorDetail getErrorDetail(final CaseResult caseResult) {
+        return new ErrorDetail() {
+            @Override
+            protected String getMessage() {
+                return caseResult.getErrorDetails();
             }
 
-            idNodeMapping.put(key, value);
-            if (nodeIdMapping.get(value) == null) {
-                nodeIdMapping.put(value, key);
+            @Override
+            protected String getStackTrace() {
+                return String.valueOf(caseResult.getErrorStackTrace());
             }
-
-        }
-
-        return new NodeMapping(idNodeMapping, nodeIdMapping);
+        };
     }
 
-    public static Map<Integer, TrackerItemDto[]> getVerifiesMap(TrackerItemDto[] testCases) {
-        Map<Integer, TrackerItemDto[]> result = new HashMap<>();
-
-        for (TrackerItemDto testCase : testCases) {
-            if (testCase.getVerifies() != null && testCase.getVerifies().length > 0) {
-                result.put(testCase.getId(), testCase.getVerifies());
-            }
+    public static NodeMapping getNodeMapping(TrackerItemDto[] trackerItems) {
+        TrackerTreeBuilder treeBuilder = new TrackerTreeBuilder();
+        for (TrackerItemDto trackerItem : trackerItems) {
+            treeBuilder.accept(trackerItem);
         }
-
-        return result;
+        return treeBuilder.build(null, 0).getNodeMapping();
     }
 
     public static String limitName(String name, Integer limit, String separator) {
@@ -158,45 +150,19 @@ public class XUnitUtil {
         }
     }
 
-    private static List<SuiteResult> getSuiteResultsFromAction(AbstractTestResultAction action) {
-        List<SuiteResult> suiteResults = new ArrayList<>();
+    private static Iterable<SuiteResult> getSuiteResultsFromAction(AbstractTestResultAction action) {
         if (action.getResult() instanceof List) { // aggregate/ maven Result
-            List<AggregatedTestResultAction.ChildReport> childReports = (List<AggregatedTestResultAction.ChildReport>) action.getResult();
-            for (AggregatedTestResultAction.ChildReport childReport : childReports) {
-                TestResult testResult = (TestResult) childReport.result;
-                for (SuiteResult suiteResult : testResult.getSuites()) {
-                    suiteResults.add(suiteResult);
+            final List<AggregatedTestResultAction.ChildReport> childReports = (List<AggregatedTestResultAction.ChildReport>) action.getResult();
+            return new Iterable<SuiteResult>() {
+                @Override
+                public Iterator<SuiteResult> iterator() {
+                    return new ChildReportSuiteIterator(childReports.iterator());
                 }
-            }
-
+            };
         } else { // plain junit result
             TestResult testResult = (TestResult) action.getResult();
-            for (SuiteResult suiteResult : testResult.getSuites()) {
-                suiteResults.add(suiteResult);
-            }
-        }
-        return suiteResults;
-    }
-
-    private static boolean isAllowedByPackageFilters(String name, PluginConfiguration pluginConfiguration) {
-        boolean include = pluginConfiguration.getIncludedPackages().length == 0;
-        boolean exclude = false;
-
-        for (String includedPackage : pluginConfiguration.getIncludedPackages()) {
-            if (name.startsWith(includedPackage.trim())) {
-                include = true;
-                break;
-            }
-        }
-
-        for (String excludedPackage : pluginConfiguration.getExcludedPackages()) {
-            if (name.startsWith(excludedPackage.trim())) {
-                exclude = true;
-                break;
-            }
+            return testResult.getSuites();
         }
-
-        return include && !exclude;
     }
 
     // http://stackoverflow.com/questions/6701948/efficient-way-to-compare-version-strings-in-java
@@ -229,4 +195,86 @@ public class XUnitUtil {
         );
         return credentials;
     }
+
+    /**
+     * Suites of all child reports of an aggregated result, one child report after the other.
+     */
+    private static class ChildReportSuiteIterator implements Iterator<SuiteResult> {
+        private final Iterator<AggregatedTestResultAction.ChildReport> childReports;
+        private Iterator<SuiteResult> suites = Collections.<SuiteResult>emptyList().iterator();
+
+        ChildReportSuiteIterator(Iterator<AggregatedTestResultAction.ChildReport> childReports) {
+            this.childReports = childReports;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!suites.hasNext() && childReports.hasNext()) {
+                suites = ((TestResult) childReports.next().result).getSuites().iterator();
+            }
+            return suites.hasNext();
+        }
+
+        @Override
+        public SuiteResult next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return suites.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Creates the items of the cases allowed by the package filter, suite by suite.
+     */
+    private static class TestResultItemIterator implements Iterator<TestResultItem> {
+        private final Iterator<SuiteResult> suites;
+        private final PackageFilter packageFilter;
+        private Iterator<CaseResult> cases = Collections.<CaseResult>emptyList().iterator();
+        private TestResultItem next;
+
+        TestResultItemIterator(Iterator<SuiteResult> suites, PackageFilter packageFilter) {
+            this.suites = suites;
+            this.packageFilter = packageFilter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                while (!cases.hasNext()) {
+                    if (!suites.hasNext()) {
+                        return false;
+                    }
+                    cases = suites.next().getCases().iterator();
+                }
+
+                CaseResult caseResult = cases.next();
+                String name = packageFilter.apply(caseResult.getFullName());
+                if (name != null) {
+                    next = createTestResultItem(caseResult, name);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public TestResultItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TestResultItem item = next;
+            next = null;
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import com.intland.jenkins.api.dto.TestRunDto;
+
+import java.util.Collection;
+
+/**
+ * Decides how many test runs are sent in one request to /items.
+ *
+ * The batch grows as long as the time spent per test run keeps dropping, backs off when it rises again and never
+ * carries more than maxBytes of (estimated) payload.
+ */
+public class AdaptiveBatchSizer {
+    private static final int INITIAL_BATCH_SIZE = 20;
+    private static final int ESTIMATED_OVERHEAD = 400; // bytes of references, tracker, result, etc. per test run
+    private static final double IMPROVEMENT_RATIO = 0.95;
+    private static final double DEGRADATION_RATIO = 1.2;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long maxBytes;
+
+    private int batchSize;
+    private double lastMillisPerItem;
+
+    public AdaptiveBatchSizer(int minSize, int maxSize, long maxBytes) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.maxBytes = maxBytes;
+        this.batchSize = clamp(INITIAL_BATCH_SIZE);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return true if a test run of the given size still fits into a batch that already holds batchBytes
+     */
+    public boolean fits(long batchBytes, long itemBytes) {
+        return batchBytes + itemBytes <= maxBytes;
+    }
+
+    /**
+     * Called when a batch had to be closed because of the byte limit after the given number of test runs.
+     */
+    public void payloadLimitReached(int items) {
+        if (items < batchSize) {
+            batchSize = clamp(items);
+        }
+    }
+
+    /**
+     * Called with the time a successfully uploaded batch took.
+     */
+    public void recordBatch(int items, long millis) {
+        if (items <= 0) {
+            return;
+        }
+
+        double millisPerItem = (double) millis / items;
+        if (lastMillisPerItem == 0 || millisPerItem < lastMillisPerItem * IMPROVEMENT_RATIO) {
+            batchSize = clamp(batchSize * 2);
+        } else if (millisPerItem > lastMillisPerItem * DEGRADATION_RATIO) {
+            batchSize = clamp(batchSize * 3 / 4);
+        }
+        lastMillisPerItem = millisPerItem;
+    }
+
+    public static long estimateSize(TestRunDto testRunDto) {
+        long size = ESTIMATED_OVERHEAD;
+        if (testRunDto.getName() != null) {
+            size += testRunDto.getName().length();
+        }
+        size += testRunDto.getDescriptionLength();
+        return size;
+    }
+
+    public static long estimateSize(Collection<TestRunDto> testRunDtos) {
+        long size = 0;
+        for (TestRunDto testRunDto : testRunDtos) {
+            size += estimateSize(testRunDto);
+        }
+        return size;
+    }
+
+    private int clamp(int size) {
+        return Math.min(maxSize, Math.max(minSize, size));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import org.apache.http.HttpStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared by every request to one codeBeamer server. After failureThreshold failed requests in a row (connection
+ * failures, timeouts, 502, 503 and 504) the circuit opens and requests fail fast for openDuration (ms), then a single
+ * probe request is let through: the circuit closes if it succeeds and opens again if not. While the probe is running,
+ * requests are retried after probeBackoff (ms). The settings are system properties prefixed with the name of this class.
+ *
+ * A request counts as one failure however often it was retried, so a single slow request does not open the circuit for
+ * every build using the server.
+ */
+public class CircuitBreaker {
+    private static final String PROPERTY_PREFIX = CircuitBreaker.class.getName() + ".";
+    public static final int FAILURE_THRESHOLD = Integer.getInteger(PROPERTY_PREFIX + "failureThreshold", 5);
+    public static final long OPEN_DURATION = Long.getLong(PROPERTY_PREFIX + "openDuration", 60000L); // ms
+    public static final long PROBE_BACKOFF = Long.getLong(PROPERTY_PREFIX + "probeBackoff", 5000L); // ms
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new HashMap<>();
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    public static CircuitBreaker get(String uri) {
+        synchronized (BREAKERS) {
+            CircuitBreaker breaker = BREAKERS.get(uri);
+            if (breaker == null) {
+                breaker = new CircuitBreaker();
+                BREAKERS.put(uri, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * @return false if the request must not be sent, every allowed request has to be followed by
+     * {@link #recordSuccess()}, {@link #recordRetry()} or {@link #recordFailure()}
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (now() < getRetryAt()) {
+                    return false;
+                }
+                state = State.HALF_OPEN; // this request is the probe
+                return true;
+            case HALF_OPEN:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openedAt = now();
+        }
+    }
+
+    /**
+     * The request failed and is sent again, only its last attempt counts towards the failure threshold. A failed probe
+     * opens the circuit again.
+     */
+    public synchronized void recordRetry() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = now();
+        }
+    }
+
+    /**
+     * @return true if requests currently fail fast
+     */
+    public synchronized boolean isOpen() {
+        return state == State.HALF_OPEN || (state == State.OPEN && now() < getRetryAt());
+    }
+
+    /**
+     * @return when the next probe request will be let through, or while a probe is running, when to check again
+     */
+    public synchronized long getRetryAt() {
+        if (state == State.HALF_OPEN) {
+            // the outcome of the probe is not known yet, its result reopens or closes the circuit
+            return now() + PROBE_BACKOFF;
+        }
+        return openedAt + OPEN_DURATION;
+    }
+
+    /**
+     * @return the current time in ms, replaced by tests
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return true if the status means codeBeamer (or the proxy in front of it) is not available
+     */
+    public static boolean isFailure(int statusCode) {
+        return statusCode == HttpStatus.SC_BAD_GATEWAY
+                || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE
+                || statusCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+}
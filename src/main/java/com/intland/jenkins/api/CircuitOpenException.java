@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} of the codeBeamer server is open.
+ */
+public class CircuitOpenException extends IOException {
+    private final long retryAt;
+
+    public CircuitOpenException(String uri, long retryAt) {
+        super(String.format("codeBeamer at %s is not available, requests are suspended for %s s", uri,
+                Math.max(0, (retryAt - System.currentTimeMillis()) / 1000)));
+        this.retryAt = retryAt;
+    }
+
+    /**
+     * @return when requests will be sent again
+     */
+    public long getRetryAt() {
+        return retryAt;
+    }
+}
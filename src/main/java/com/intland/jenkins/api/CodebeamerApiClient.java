@@ -13,145 +13,454 @@ import com.intland.jenkins.dto.NodeMapping;
 import com.intland.jenkins.dto.PluginConfiguration;
 import com.intland.jenkins.dto.TestResultItem;
 import com.intland.jenkins.dto.TestResults;
+import com.intland.jenkins.dto.TestSummary;
+import com.intland.jenkins.dto.TrackerTree;
 import com.intland.jenkins.markup.*;
 import hudson.FilePath;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.intland.jenkins.api.RestAdapter.PAGESIZE;
 
 public class CodebeamerApiClient {
     public static final int HTTP_TIMEOUT_LONG = 45000; // ms
     public static final int HTTP_TIMEOUT_SHORT = 10000; // ms
-    private static final int UPLOAD_BATCH_SIZE = 20;
     private final String DEFAULT_TESTSET_NAME = "Jenkins-xUnit";
     private final String TEST_CASE_TYPE_NAME = "Automated";
+    private static final String BUG_NAME_PREFIX = "Bug of ";
+    // first codeBeamer version accepting status and spentMillis when a test run is created
+    private static final String STATUS_ON_CREATE_MIN_VERSION = "9.0";
+    private static final int PAGE_FETCH_THREADS = Math.max(1, Integer.getInteger(CodebeamerApiClient.class.getName() + ".pageFetchThreads", 4));
+    private static final int TREE_BATCH_SIZE = Integer.getInteger(CodebeamerApiClient.class.getName() + ".treeBatchSize", 100);
+    // modified items fetched one by one before a cached tree is reloaded completely instead
+    private static final int CACHE_SYNC_MAX_CHANGES = Integer.getInteger(CodebeamerApiClient.class.getName() + ".cacheSyncMaxChanges", 100);
+    private static final long CACHE_SYNC_MARGIN = 10 * 60 * 1000; // ms, tolerates clock differences between Jenkins and codeBeamer
+    private static final Pattern VERSION_PATTERN = Pattern.compile("^\\d+(\\.\\d+)*");
     private boolean isTestCaseTypeSupported = false;
+    private boolean isStatusOnCreateSupported = false;
     private PluginConfiguration pluginConfiguration;
     private TaskListener listener;
 
     private RestAdapter rest;
+    private TrackerTreeCache trackerTreeCache;
+    private TestCaseMapping testCaseMapping;
+    private Set<String> openBugNames;
+    private TrackerTree testCaseTree;
+    private TrackerTree requirementTree;
+    private AdaptiveBatchSizer batchSizer;
 
     public CodebeamerApiClient(PluginConfiguration pluginConfiguration, TaskListener listener, int timeout, RestAdapter rest) {
         this.pluginConfiguration = pluginConfiguration;
         this.listener = listener;
 
         this.rest = rest;
+        if (pluginConfiguration.getCacheDirectory() != null) {
+            this.trackerTreeCache = new TrackerTreeCache(pluginConfiguration.getCacheDirectory(), pluginConfiguration.getUri());
+        }
+        if (pluginConfiguration.getTestCaseMappingFile() != null) {
+            this.testCaseMapping = new TestCaseMapping(pluginConfiguration.getTestCaseMappingFile());
+        }
     }
 
     public void postTestRuns(TestResults tests, Run<?, ?> build, FilePath filePath) throws IOException {
-        String buildIdentifier = getBuildIdentifier(build);
+        postTestRuns(tests, getBuildIdentifier(build), createParentMarkup(build, filePath));
+    }
+
+    /**
+     * Uploads the test results without touching the build, so it can run after the build finished and its agent is gone.
+     *
+     * @param parentMarkup wiki markup of the build, scm and test report info, see {@link #createParentMarkup(Run, FilePath)}
+     */
+    public void postTestRuns(TestResults tests, String buildIdentifier, String parentMarkup) throws IOException {
+        List<String> testNames = getTestNames(tests);
+        try (UploadJournal journal = UploadJournal.open(pluginConfiguration.getJournalFile(), UploadJournal.fingerprint(testNames))) {
+            postTestRuns(tests, testNames, buildIdentifier, parentMarkup, journal);
+        }
+    }
+
+    private void postTestRuns(TestResults tests, List<String> testNames, String buildIdentifier, String parentMarkup, UploadJournal journal) throws IOException {
         XUnitUtil.log(listener, "Starting xUnit tests upload");
+        if (journal.isResumed()) {
+            XUnitUtil.log(listener, String.format("Resuming upload, %s test runs were uploaded before", journal.getUploadedCount()));
+        }
+
+        prepareUpload();
+        Integer testSetId = createTestSet(buildIdentifier, journal);
+
+        // most builds run the same tests as the previous one, their Test Cases do not have to be reconciled again
+        String mappingFingerprint = null;
+        Map<String, Integer> testCasesForCurrentTestRun = null;
+        if (testCaseMapping != null) {
+            mappingFingerprint = TestCaseMapping.fingerprint(testNames, pluginConfiguration);
+            testCasesForCurrentTestRun = testCaseMapping.read(mappingFingerprint);
+        }
+
+        boolean mappingReused = testCasesForCurrentTestRun != null;
+        if (mappingReused) {
+            XUnitUtil.log(listener, String.format("Same tests as in the previous upload, reusing %s Test Cases", testCasesForCurrentTestRun.size()));
+        } else {
+            testCasesForCurrentTestRun = resolveTestCases(testNames);
+            if (testCaseMapping != null) {
+                testCaseMapping.write(mappingFingerprint, testCasesForCurrentTestRun);
+            }
+        }
+
+        try {
+            Integer parentTestRunId = journal.getParentTestRunId();
+            if (parentTestRunId == null) {
+                parentTestRunId = createParentTestRun(buildIdentifier, tests.getTestSummary().toWikiMarkup() + parentMarkup,
+                        tests.getStatus(), testSetId, testCasesForCurrentTestRun.values(), journal);
+            }
+
+            uploadTestRuns(tests, 0, testCasesForCurrentTestRun, testSetId, parentTestRunId,
+                    tests.getTestSummary().getFailCount() > 0, journal);
+            finishUpload(testSetId, parentTestRunId, testCasesForCurrentTestRun.values(), journal);
+        } catch (UnexpectedStatusException e) {
+            // a reused or cached Test Case may have been deleted since, the next upload reconciles the trees again, but
+            // not because codeBeamer was unavailable or overloaded
+            if (e.isRejectedContent()) {
+                invalidateTrackerTrees();
+                if (mappingReused) {
+                    testCaseMapping.invalidate();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the cached trees, the incremental sync only notices deleted items through the item count of the tracker.
+     */
+    private void invalidateTrackerTrees() {
+        testCaseTree = null;
+        requirementTree = null;
+        if (trackerTreeCache != null) {
+            trackerTreeCache.invalidate(pluginConfiguration.getTestCaseTrackerId());
+            if (pluginConfiguration.getRequirementTrackerId() != null) {
+                trackerTreeCache.invalidate(pluginConfiguration.getRequirementTrackerId());
+            }
+        }
+    }
+
+    /**
+     * Creates an upload of test results which are still being produced, nothing is sent before the first chunk.
+     */
+    public IncrementalUpload createIncrementalUpload(String buildIdentifier) throws IOException {
+        return new IncrementalUpload(buildIdentifier);
+    }
 
+    private void prepareUpload() throws IOException {
         XUnitUtil.log(listener, "Checking supported Test Case types");
         isTestCaseTypeSupported = isTestCaseTypeSupported();
         XUnitUtil.log(listener, String.format("Test Case type: %s, supported: %s", TEST_CASE_TYPE_NAME, isTestCaseTypeSupported));
 
-        XUnitUtil.log(listener, "Fetching Test Cases");
-        TrackerItemDto[] testCases = getTrackerItems(pluginConfiguration.getTestCaseTrackerId());
-        NodeMapping testCasesMap = XUnitUtil.getNodeMapping(testCases);
+        isStatusOnCreateSupported = isStatusOnCreateSupported();
+        XUnitUtil.log(listener, String.format("Test Run status set on creation: %s", isStatusOnCreateSupported));
+    }
 
-        TrackerItemDto[] requirements = null;
-        NodeMapping requirementsNodeMapping = null;
-        Map<Integer, TrackerItemDto[]> verifiesMap = new HashMap<>();
-        if (pluginConfiguration.getRequirementTrackerId() != null) {
-            XUnitUtil.log(listener, "Fetching Requirements");
-            requirements = getTrackerItems(pluginConfiguration.getRequirementTrackerId());
-            verifiesMap = XUnitUtil.getVerifiesMap(testCases);
-            requirementsNodeMapping = XUnitUtil.getNodeMapping(requirements);
+    private Integer createTestSet(String buildIdentifier, UploadJournal journal) throws IOException {
+        Integer testSetId = journal.getTestSetId();
+        if (testSetId == null) {
+            String testSetName = DEFAULT_TESTSET_NAME + "-" + buildIdentifier;
+            XUnitUtil.log(listener, "Creating Test Set: " + testSetName);
+            testSetId = findOrCreateTrackerItem(pluginConfiguration.getTestSetTrackerId(), testSetName, "--");
+            journal.testSetCreated(testSetId);
+            XUnitUtil.log(listener, "Test Set created with id: " + testSetId);
+        }
+        return testSetId;
+    }
+
+    /**
+     * Finds or creates the Test Cases of the tests, and the Requirements verified by them if configured.
+     *
+     * @return the Test Case id of every test by its full name
+     */
+    private Map<String, Integer> resolveTestCases(List<String> testNames) throws IOException {
+        if (testCaseTree == null) {
+            XUnitUtil.log(listener, "Fetching Test Cases");
+            testCaseTree = getTrackerTree(pluginConfiguration.getTestCaseTrackerId());
+
+            if (pluginConfiguration.getRequirementTrackerId() != null) {
+                XUnitUtil.log(listener, "Fetching Requirements");
+                requirementTree = getTrackerTree(pluginConfiguration.getRequirementTrackerId());
+            }
         }
 
-        String testSetName = DEFAULT_TESTSET_NAME + "-" + buildIdentifier;
-        XUnitUtil.log(listener, "Creating Test Set: " + testSetName);
-        Integer testSetId = findOrCreateTrackerItem(pluginConfiguration.getTestSetTrackerId(), testSetName, "--");
-        XUnitUtil.log(listener, "Test Set created with id: " + testSetId);
+        NodeMapping testCasesMap = testCaseTree.getNodeMapping();
+        Set<Integer> verifiedTestCaseIds = testCaseTree.getVerifiedIds();
+
+        createMissingTrackerItems(testNames, pluginConfiguration.getTestCaseTrackerId(), testCasesMap,
+                pluginConfiguration.getTestCaseParentId(), null, "Accepted");
+
         Map<String, Integer> testCasesForCurrentTestRun = new HashMap<>();
-        for (TestResultItem test : tests.getTestResultItems()) {
-            Integer testCaseId = findOrCreateTrackerItemInTree(test.getFullName(), pluginConfiguration.getTestCaseTrackerId(), testCasesMap,
+        List<String> testsWithoutRequirement = new ArrayList<>();
+        for (String testName : testNames) {
+            Integer testCaseId = findOrCreateTrackerItemInTree(testName, pluginConfiguration.getTestCaseTrackerId(), testCasesMap,
                     pluginConfiguration.getTestCaseParentId(), null, "Accepted");
-            testCasesForCurrentTestRun.put(test.getFullName(), testCaseId);
+            testCasesForCurrentTestRun.put(testName, testCaseId);
 
-            // create requirement if needed
-            if (requirements != null && verifiesMap.get(testCaseId) == null) {
-                createRequirementInTree(verifiesMap, requirementsNodeMapping, test, testCaseId);
+            if (requirementTree != null && !verifiedTestCaseIds.contains(testCaseId)) {
+                testsWithoutRequirement.add(testName);
+            }
+        }
+
+        // create requirements if needed
+        if (!testsWithoutRequirement.isEmpty()) {
+            NodeMapping requirementsNodeMapping = requirementTree.getNodeMapping();
+            createMissingTrackerItems(testsWithoutRequirement, pluginConfiguration.getRequirementTrackerId(), requirementsNodeMapping,
+                    pluginConfiguration.getRequirementParentId(), pluginConfiguration.getRequirementDepth(), null);
+
+            for (String testName : testsWithoutRequirement) {
+                Integer testCaseId = testCasesForCurrentTestRun.get(testName);
+                if (!verifiedTestCaseIds.contains(testCaseId)) {
+                    createRequirementInTree(verifiedTestCaseIds, requirementsNodeMapping, testName, testCaseId);
+                }
             }
         }
 
-        TrackerItemDto parentTestRun = createParentTestRun(tests, buildIdentifier, build, filePath, pluginConfiguration.getTestConfigurationId(), testSetId, testCasesForCurrentTestRun.values());
+        saveTrackerTree(testCaseTree);
+        if (requirementTree != null) {
+            saveTrackerTree(requirementTree);
+        }
+        return testCasesForCurrentTestRun;
+    }
+
+    private Integer createParentTestRun(String buildIdentifier, String description, String result, Integer testSetId,
+                                        Collection<Integer> testCaseIds, UploadJournal journal) throws IOException {
+        TrackerItemDto parentTestRun = createParentTestRun(buildIdentifier, description, result, pluginConfiguration.getTestConfigurationId(), testSetId, testCaseIds);
+        journal.parentTestRunCreated(parentTestRun.getId());
         XUnitUtil.log(listener, String.format("Parent TestRun created with name: %s and id: %s ", parentTestRun.getName(), parentTestRun.getId()));
+        return parentTestRun.getId();
+    }
 
-        int uploadCounter = 0;
-        int numberOfReportedBugs = 0;
-        List<TestResultItem> testsToUpload = tests.getTestResultItems();
-        int toUploadSize = testsToUpload.size();
-        while (uploadCounter < testsToUpload.size()) {
-            int toIndex = uploadCounter + UPLOAD_BATCH_SIZE < toUploadSize ? uploadCounter + UPLOAD_BATCH_SIZE : toUploadSize;
-            List<TestResultItem> testBatch = testsToUpload.subList(uploadCounter, toIndex);
+    /**
+     * Creates the test runs of the tests, the journal index of the first test is given by offset. The tests are
+     * iterated once, only the test runs of the batches in flight are kept in memory.
+     */
+    private void uploadTestRuns(Iterable<TestResultItem> testsToUpload, int offset, Map<String, Integer> testCasesForCurrentTestRun,
+                                Integer testSetId, Integer parentTestRunId, boolean hasFailedTest, UploadJournal journal) throws IOException {
+        if (openBugNames == null && isBugReportingEnabled() && hasFailedTest) {
+            XUnitUtil.log(listener, "Fetching unresolved Bugs");
+            openBugNames = getOpenBugNames();
+        }
+        completeInterruptedBatches(testsToUpload, offset, journal);
 
-            List<TestRunDto> testRuns = new ArrayList<>(testBatch.size());
-            for (TestResultItem test : testBatch) {
-                Integer testCaseId = testCasesForCurrentTestRun.get(test.getFullName());
-                testRuns.add(createTestRunObject(pluginConfiguration.getTestConfigurationId(), testSetId, parentTestRun, test, testCaseId));
-            }
+        int concurrency = pluginConfiguration.getUploadConcurrency();
+        if (batchSizer == null) {
+            batchSizer = new AdaptiveBatchSizer(pluginConfiguration.getMinBatchSize(),
+                    pluginConfiguration.getMaxBatchSize(), pluginConfiguration.getMaxBatchBytes());
+        }
+
+        // up to <concurrency> batches are in flight, results are processed in the order the batches were submitted
+        ExecutorService executor = newExecutor("codeBeamer test run upload", concurrency);
+        try {
+            LinkedList<Future<TestRunBatch>> inFlight = new LinkedList<>();
+            Iterator<TestResultItem> pending = testsToUpload.iterator();
+            TestResultItem next = null; // did not fit into the previous batch
+            int nextIndex = offset;
+            while (next != null || pending.hasNext() || !inFlight.isEmpty()) {
+                while ((next != null || pending.hasNext()) && inFlight.size() < concurrency) {
+                    int batchSize = batchSizer.getBatchSize();
+                    long batchBytes = 0;
+
+                    List<TestResultItem> tests = new ArrayList<>(batchSize);
+                    List<TestRunDto> testRuns = new ArrayList<>(batchSize);
+                    int fromIndex = nextIndex;
+                    while ((next != null || pending.hasNext()) && testRuns.size() < batchSize) {
+                        TestResultItem test = next != null ? next : pending.next();
+                        next = null;
+                        if (journal.isUploaded(nextIndex)) {
+                            // uploaded before an interruption, a batch only covers consecutive tests
+                            nextIndex++;
+                            if (testRuns.isEmpty()) {
+                                fromIndex = nextIndex;
+                                continue;
+                            }
+                            break;
+                        }
+
+                        Integer testCaseId = testCasesForCurrentTestRun.get(test.getFullName());
+                        TestRunDto testRun = createTestRunObject(pluginConfiguration.getTestConfigurationId(), testSetId, parentTestRunId, test, testCaseId);
+
+                        long testRunBytes = AdaptiveBatchSizer.estimateSize(testRun);
+                        if (!testRuns.isEmpty() && !batchSizer.fits(batchBytes, testRunBytes)) {
+                            batchSizer.payloadLimitReached(testRuns.size());
+                            next = test;
+                            break;
+                        }
+
+                        tests.add(test);
+                        testRuns.add(testRun);
+                        batchBytes += testRunBytes;
+                        nextIndex++;
+                    }
 
-            TrackerItemDto[] createdRuns = rest.postTrackerItems(testRuns);
-            List<TestCaseDto> testCaseDtos = new ArrayList<>(createdRuns.length);
+                    if (!testRuns.isEmpty()) {
+                        inFlight.add(executor.submit(new TestRunBatch(journal, fromIndex, tests, testRuns)));
+                    }
+                }
 
-            for (int i = 0; i < createdRuns.length; i++) {
-                XUnitUtil.log(listener, String.format("TestRun created with name: %s and id: %s ", createdRuns[i].getName(), createdRuns[i].getId()));
+                if (inFlight.isEmpty()) {
+                    // the remaining tests were all uploaded before
+                    break;
+                }
 
-                long duration = (long) (testBatch.get(i).getDuration() * 1000);
-                TrackerItemDto createdRun = createdRuns[i];
-                TestCaseDto testCaseDto = new TestCaseDto(createdRun.getId(), "Finished"); // meaning: closed
-                testCaseDto.setSpentMillis(duration);
-                testCaseDtos.add(testCaseDto);
+                TestRunBatch batch = getResult(inFlight.removeFirst());
+                batchSizer.recordBatch(batch.getTests().size(), batch.getMillis());
 
-                if (isReportingBugNeeded(testBatch.get(i), numberOfReportedBugs)) {
-                    createBug(testBatch.get(i), createdRun);
-                    numberOfReportedBugs++;
+                TrackerItemDto[] createdRuns = batch.getCreatedRuns();
+                for (TrackerItemDto createdRun : createdRuns) {
+                    XUnitUtil.log(listener, String.format("TestRun created with name: %s and id: %s ", createdRun.getName(), createdRun.getId()));
                 }
+                reportBugs(batch.getFromIndex(), batch.getTests(), getIds(createdRuns), journal);
+
+                int uploadCounter = journal.getUploadedCount();
+                if (uploadCounter / 100 > (uploadCounter - createdRuns.length) / 100) {
+                    XUnitUtil.log(listener, "uploaded: " + uploadCounter + " test runs");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Completes the batches whose test runs were created before the upload was interrupted: sets the status of their
+     * test runs if that was still missing and reports the bugs of their failed tests.
+     */
+    private void completeInterruptedBatches(Iterable<TestResultItem> tests, int offset, UploadJournal journal) throws IOException {
+        Map<Integer, Integer[]> incompleteBatches = journal.getIncompleteBatches();
+        if (incompleteBatches.isEmpty()) {
+            return;
+        }
+
+        // the index of the batch containing each test, only the tests of the incomplete batches are kept
+        Map<Integer, Integer> batchOfIndex = new HashMap<>();
+        Map<Integer, List<TestResultItem>> testsOfBatch = new HashMap<>();
+        for (Map.Entry<Integer, Integer[]> batch : incompleteBatches.entrySet()) {
+            for (int i = 0; i < batch.getValue().length; i++) {
+                batchOfIndex.put(batch.getKey() + i, batch.getKey());
+            }
+            testsOfBatch.put(batch.getKey(), new ArrayList<TestResultItem>(batch.getValue().length));
+        }
+
+        int index = offset;
+        for (TestResultItem test : tests) {
+            Integer fromIndex = batchOfIndex.get(index++);
+            if (fromIndex != null) {
+                testsOfBatch.get(fromIndex).add(test);
+            }
+        }
+
+        for (Map.Entry<Integer, Integer[]> batch : incompleteBatches.entrySet()) {
+            Integer fromIndex = batch.getKey();
+            List<TestResultItem> batchTests = testsOfBatch.get(fromIndex);
+            if (batchTests.size() != batch.getValue().length) {
+                // belongs to another part of the tests, see IncrementalUpload
+                continue;
             }
 
-            updateTrackerItems(testCaseDtos);
+            XUnitUtil.log(listener, String.format("Completing the %s test runs created before the interruption", batchTests.size()));
+            if (!isStatusOnCreateSupported && !journal.isClosed(fromIndex)) {
+                closeTestRuns(batch.getValue(), batchTests);
+                journal.batchClosed(fromIndex);
+            }
+            reportBugs(fromIndex, batchTests, batch.getValue(), journal);
+        }
+    }
 
-            uploadCounter += createdRuns.length;
-            if (uploadCounter % 100 == 0) {
-                XUnitUtil.log(listener, "uploaded: " + uploadCounter + " test runs");
+    /**
+     * Reports the bugs of the failed tests of a batch whose test runs were created, which completes the batch.
+     */
+    private void reportBugs(int fromIndex, List<TestResultItem> tests, Integer[] runIds, UploadJournal journal) throws IOException {
+        int bugCount = 0;
+        for (int i = 0; i < runIds.length; i++) {
+            if (isReportingBugNeeded(tests.get(i), journal.getReportedBugCount() + bugCount)) {
+                createBug(tests.get(i), runIds[i]);
+                bugCount++;
             }
         }
+        journal.batchReported(fromIndex, bugCount);
+    }
+
+    /**
+     * Sets the status and spent time of test runs, for codeBeamer versions ignoring them on creation.
+     */
+    private void closeTestRuns(Integer[] runIds, List<TestResultItem> tests) throws IOException {
+        List<TestCaseDto> testCaseDtos = new ArrayList<>(runIds.length);
+        for (int i = 0; i < runIds.length; i++) {
+            long duration = (long) (tests.get(i).getDuration() * 1000);
+            TestCaseDto testCaseDto = new TestCaseDto(runIds[i], "Finished"); // meaning: closed
+            testCaseDto.setSpentMillis(duration);
+            testCaseDtos.add(testCaseDto);
+        }
+
+        updateTrackerItems(testCaseDtos);
+    }
+
+    private static Integer[] getIds(TrackerItemDto[] trackerItems) {
+        Integer[] ids = new Integer[trackerItems.length];
+        for (int i = 0; i < trackerItems.length; i++) {
+            ids[i] = trackerItems[i].getId();
+        }
+        return ids;
+    }
 
-        updateTestSetTestCases(testSetId, testCasesForCurrentTestRun.values());
-        updateTrackerItemStatus(parentTestRun.getId(), "Finished");
+    private void finishUpload(Integer testSetId, Integer parentTestRunId, Collection<Integer> testCaseIds, UploadJournal journal) throws IOException {
+        updateTestSetTestCases(testSetId, testCaseIds);
+        updateTrackerItemStatus(parentTestRunId, "Finished");
         updateTrackerItemStatus(testSetId, "Completed"); // meaning: resolved
-        XUnitUtil.log(listener, "Upload finished, uploaded: " + uploadCounter + " test runs");
+        journal.finished();
+        XUnitUtil.log(listener, "Upload finished, uploaded: " + journal.getUploadedCount() + " test runs");
+    }
+
+    private static List<String> getTestNames(Iterable<TestResultItem> tests) {
+        List<String> testNames = new ArrayList<>();
+        for (TestResultItem test : tests) {
+            testNames.add(test.getFullName());
+        }
+        return testNames;
     }
 
     private String getCodebeamerVersion() throws IOException {
         return rest.getVersion();
     }
 
+    private boolean isStatusOnCreateSupported() throws IOException {
+        Matcher matcher = VERSION_PATTERN.matcher(getCodebeamerVersion().trim());
+        return matcher.find() && XUnitUtil.versionCompare(matcher.group(), STATUS_ON_CREATE_MIN_VERSION) >= 0;
+    }
+
     private boolean isTestCaseTypeSupported() throws IOException {
         TrackerSchemaDto trackerSchemaDto = rest.getTestCaseTrackerSchema();
         return trackerSchemaDto.doesTypeContain(TEST_CASE_TYPE_NAME);
     }
 
-    private boolean isReportingBugNeeded(TestResultItem test, int numberOfReportedBugs) throws IOException  {
-        boolean isBugTrackerEnabled = pluginConfiguration.getBugTrackerId() != null;
-        boolean needToReportMoreBugs = pluginConfiguration.getNumberOfBugsToReport() > 0 && pluginConfiguration.getNumberOfBugsToReport() > numberOfReportedBugs;
+    private boolean isBugReportingEnabled() {
+        return pluginConfiguration.getBugTrackerId() != null && pluginConfiguration.getNumberOfBugsToReport() > 0;
+    }
+
+    private boolean isReportingBugNeeded(TestResultItem test, int numberOfReportedBugs) {
+        boolean needToReportMoreBugs = pluginConfiguration.getNumberOfBugsToReport() > numberOfReportedBugs;
 
-        return  isBugTrackerEnabled &&
+        return  isBugReportingEnabled() &&
                 !test.isSuccessful() &&
                 needToReportMoreBugs &&
                 !isTrackerItemWithNameAndStatusExist(test);
     }
 
-    private boolean isTrackerItemWithNameAndStatusExist(TestResultItem test) throws IOException {
+    private boolean isTrackerItemWithNameAndStatusExist(TestResultItem test) {
         String name = generateNameOfBug(test);
-        PagedTrackerItemsDto pagedTrackerItemsDto = rest.getPagedTrackerItemForName(name);
-        boolean itemExists = pagedTrackerItemsDto.getTotal() > 0;
+        boolean itemExists = openBugNames != null && openBugNames.contains(toBugKey(name));
         if (itemExists) {
             XUnitUtil.log(listener, String.format("Unresolved bug with name: %s already exists, skipping Bug report creation", name));
         }
@@ -159,24 +468,57 @@ public class CodebeamerApiClient {
         return itemExists;
     }
 
-    private TrackerItemDto createBug(TestResultItem test, TrackerItemDto createdRun) throws IOException {
+    /**
+     * Fetches the names of all unresolved bugs created by the plugin once, instead of querying every failing test. The
+     * names are kept as {@link #toBugKey(String)}.
+     */
+    private Set<String> getOpenBugNames() throws IOException {
+        final Set<String> names = new HashSet<>();
+        TrackerItemConsumer consumer = new TrackerItemConsumer() {
+            @Override
+            public void accept(TrackerItemDto item) {
+                names.add(toBugKey(item.getName()));
+            }
+        };
+
+        int page = 1;
+        int total;
+        do {
+            total = rest.getOpenTrackerItemsWithPrefix(pluginConfiguration.getBugTrackerId(), BUG_NAME_PREFIX, page, consumer);
+        } while (page++ * PAGESIZE < total);
+        return names;
+    }
+
+    private TrackerItemDto createBug(TestResultItem test, Integer testRunId) throws IOException {
         TestRunDto bug = new TestRunDto();
         bug.setTracker(String.format("/tracker/" + pluginConfiguration.getBugTrackerId()));
         bug.setName(generateNameOfBug(test));
-        bug.setDescription(String.format("{{{%s}}} \\\\ [ISSUE:%s]", test.getErrorDetail(), createdRun.getId()));
+        bug.setDescription(String.format("{{{%s}}} \\\\ [ISSUE:%s]", test.getErrorDetail(), testRunId));
         bug.setDescFormat("Wiki");
-        return rest.postTrackerItem(bug);
+        TrackerItemDto createdBug = rest.postTrackerItem(bug);
+        if (openBugNames != null) {
+            openBugNames.add(toBugKey(bug.getName()));
+        }
+        return createdBug;
+    }
+
+    /**
+     * Bug names are compared ignoring case, like the summary like '...' query of codeBeamer did before the names were
+     * fetched at once.
+     */
+    private static String toBugKey(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
     }
 
     private String generateNameOfBug(TestResultItem test) {
-        return "Bug of " + test.getName();
+        return BUG_NAME_PREFIX + test.getName();
     }
 
-    private TestRunDto createTestRunObject(Integer testConfigurationId, Integer testSetId, TrackerItemDto parentItem, TestResultItem test, Integer testCaseId) throws IOException {
-        TestRunDto testRunDto = new TestRunDto(test.getName(), parentItem.getId(), pluginConfiguration.getTestRunTrackerId(),
+    private TestRunDto createTestRunObject(Integer testConfigurationId, Integer testSetId, Integer parentTestRunId, TestResultItem test, Integer testCaseId) throws IOException {
+        TestRunDto testRunDto = new TestRunDto(test.getName(), parentTestRunId, pluginConfiguration.getTestRunTrackerId(),
                 Arrays.asList(new Integer[]{testCaseId}), testConfigurationId, test.getResult());
         if (test.getErrorDetail() != null) {
-            testRunDto.setDescription(String.format("{{{%s}}}", test.getErrorDetail()));
+            testRunDto.setErrorDetail(test.getErrorDetail());
             testRunDto.setDescFormat("Wiki");
         } else {
             testRunDto.setDescription("--");
@@ -189,12 +531,25 @@ public class CodebeamerApiClient {
         }
 
         testRunDto.setBuild(pluginConfiguration.getBuild());
+
+        if (isStatusOnCreateSupported) {
+            testRunDto.setStatus("Finished"); // meaning: closed
+            testRunDto.setSpentMillis((long) (test.getDuration() * 1000));
+        }
         return testRunDto;
     }
 
-    private String createParentMarkup(Run<?, ?> build, FilePath filePath) throws IOException {
+    public String createParentMarkup(Run<?, ?> build, FilePath filePath) throws IOException {
+        ScmDto scmDto = ScmDataCollector.collectScmData(build);
+        return resolveParentMarkup(collectParentMarkup(build, filePath, scmDto), scmDto.getRepository());
+    }
+
+    /**
+     * @return the parent markup collected from the build without requests to codeBeamer, see
+     * {@link #resolveParentMarkup(String, ScmRepository)}
+     */
+    public String collectParentMarkup(Run<?, ?> build, FilePath filePath, ScmDto scmDto) {
         BuildDto buildDto = BuildDataCollector.collectBuildData(build, filePath);
-        ScmDto scmDto = ScmDataCollector.collectScmData(build, this);
         TestResultDto testResultDto = TestResultCollector.collectTestResultData(build, listener);
 
         return new WikiMarkupBuilder()
@@ -205,20 +560,33 @@ public class CodebeamerApiClient {
                 .build();
     }
 
-    private TrackerItemDto createParentTestRun(TestResults tests, String buildIdentifier, Run<?, ?> build, FilePath filePath, Integer testConfigurationId, Integer testSetId, Collection<Integer> testCaseIds) throws IOException {
-        String newMarkupContent = createParentMarkup(build, filePath);
-        TestRunDto parentRunDto = new TestRunDto(buildIdentifier, null, pluginConfiguration.getTestRunTrackerId(), testCaseIds, testConfigurationId, tests.getStatus());
+    /**
+     * @param repository the repository of the build, null if the markup has no codeBeamer link to look up
+     * @return the parent markup with the codeBeamer link of the repository
+     */
+    public String resolveParentMarkup(String parentMarkup, ScmRepository repository) throws IOException {
+        if (repository == null) {
+            return parentMarkup;
+        }
+        String cbRepoUrl = ScmRepository.SVN.equals(repository.getType())
+                ? getCodeBeamerRepoUrlForSVN(repository.getRemote())
+                : getCodeBeamerRepoUrlForGit(repository.getRemote());
+        return parentMarkup.replace(ScmRepository.PLACEHOLDER, cbRepoUrl);
+    }
+
+    private TrackerItemDto createParentTestRun(String buildIdentifier, String description, String result, Integer testConfigurationId, Integer testSetId, Collection<Integer> testCaseIds) throws IOException {
+        TestRunDto parentRunDto = new TestRunDto(buildIdentifier, null, pluginConfiguration.getTestRunTrackerId(), testCaseIds, testConfigurationId, result);
         parentRunDto.setTestSet(testSetId);
-        parentRunDto.setDescription(tests.getTestSummary().toWikiMarkup() + newMarkupContent);
+        parentRunDto.setDescription(description);
         parentRunDto.setDescFormat("Wiki");
-        return rest.postTrackerItem(parentRunDto);
+        return rest.postTrackerItem(parentRunDto, rest.findByName(pluginConfiguration.getTestRunTrackerId(), buildIdentifier));
     }
 
-    private void createRequirementInTree(Map<Integer, TrackerItemDto[]> verifiesMap, NodeMapping requirementsNodeMapping, TestResultItem test, Integer testCaseId) throws IOException {
-        Integer requirementId = findOrCreateTrackerItemInTree(test.getFullName(), pluginConfiguration.getRequirementTrackerId(),
+    private void createRequirementInTree(Set<Integer> verifiedTestCaseIds, NodeMapping requirementsNodeMapping, String testName, Integer testCaseId) throws IOException {
+        Integer requirementId = findOrCreateTrackerItemInTree(testName, pluginConfiguration.getRequirementTrackerId(),
                 requirementsNodeMapping, pluginConfiguration.getRequirementParentId(), pluginConfiguration.getRequirementDepth(), null);
         updateTestCaseVerifies(testCaseId, requirementId);
-        verifiesMap.put(testCaseId, new TrackerItemDto[]{new TrackerItemDto()});
+        verifiedTestCaseIds.add(testCaseId);
     }
 
     private Integer findOrCreateTrackerItem(Integer trackerId, String name, String description) throws IOException {
@@ -231,47 +599,126 @@ public class CodebeamerApiClient {
             testConfig.setName(name);
             testConfig.setTracker(String.format("/tracker/%s", trackerId));
             testConfig.setDescription(description);
-            return rest.postTrackerItem(testConfig).getId();
+            return rest.postTrackerItem(testConfig, rest.findByName(trackerId, name)).getId();
         }
     }
 
-    private String getBuildIdentifier(Run<?, ?> build) {
+    public static String getBuildIdentifier(Run<?, ?> build) {
         return build.getParent().getName() + " #" + build.getNumber();
     }
 
     private Integer findOrCreateTrackerItemInTree(String fullName, Integer trackerId, NodeMapping nodeMapping, Integer folder, Integer limit, String status) throws IOException {
         fullName = XUnitUtil.limitName(fullName, limit, ".");
 
-        if (folder != null && nodeMapping.getIdNodeMapping().get(folder) != null) {
-            fullName = nodeMapping.getIdNodeMapping().get(folder) + "." + fullName;
+        // the path is resolved segment by segment starting at the folder, missing segments are created on the way
+        int node = getStartNode(nodeMapping, folder);
+        Integer result = node == NodeMapping.ROOT ? null : folder;
+
+        StringTokenizer tokenizer = new StringTokenizer(fullName, ".");
+        while (tokenizer.hasMoreElements()) {
+            String token = tokenizer.nextToken();
+            int child = nodeMapping.getChild(node, token);
+
+            if (child == NodeMapping.NONE || nodeMapping.getId(child) == null) {
+                result = rest.postTrackerItem(newTrackerItemWithParent(token, trackerId, result)).getId();
+                child = nodeMapping.add(node, token, result);
+
+                if (status != null) {
+                    updateTrackerItemStatus(result, status);
+                }
+            } else {
+                result = nodeMapping.getId(child);
+            }
+            node = child;
         }
 
-        Integer result = nodeMapping.getNodeIdMapping().get(fullName);
-        if (result == null) {
-            StringTokenizer tokenizer = new StringTokenizer(fullName, ".");
-            String segment = null;
+        return result;
+    }
+
+    /**
+     * Creates the missing path segments of all names up front, one tree level after the other: every level takes one
+     * bulk request per {@link #TREE_BATCH_SIZE} items (plus one bulk status update) instead of two requests per item.
+     */
+    private void createMissingTrackerItems(Collection<String> fullNames, Integer trackerId, NodeMapping nodeMapping, Integer folder, Integer limit, String status) throws IOException {
+        int startNode = getStartNode(nodeMapping, folder);
+        Integer startId = startNode == NodeMapping.ROOT ? null : folder;
+
+        // missing nodes are added without id first, grouped by their depth below the start node
+        List<List<Integer>> levels = new ArrayList<>();
+        for (String fullName : fullNames) {
+            int node = startNode;
+            int level = 0;
+            StringTokenizer tokenizer = new StringTokenizer(XUnitUtil.limitName(fullName, limit, "."), ".");
             while (tokenizer.hasMoreElements()) {
                 String token = tokenizer.nextToken();
-                segment = segment == null ? token : segment + "." + token;
+                int child = nodeMapping.getChild(node, token);
+                if (child == NodeMapping.NONE) {
+                    child = nodeMapping.add(node, token, null);
+                    if (levels.size() == level) {
+                        levels.add(new ArrayList<Integer>());
+                    }
+                    levels.get(level).add(child);
+                }
+                node = child;
+                level++;
+            }
+        }
 
-                if (nodeMapping.getNodeIdMapping().get(segment) == null) {
-                    result = postTrackerItemWithParent(segment, trackerId, result);
-                    nodeMapping.getNodeIdMapping().put(segment, result);
+        if (levels.isEmpty()) {
+            return;
+        }
 
-                    if (status != null) {
-                        updateTrackerItemStatus(result, status);
+        List<Integer> createdIds = new ArrayList<>();
+        for (List<Integer> nodes : levels) {
+            for (int fromIndex = 0; fromIndex < nodes.size(); fromIndex += TREE_BATCH_SIZE) {
+                List<Integer> batch = new ArrayList<>();
+                List<TestRunDto> items = new ArrayList<>();
+                for (Integer node : nodes.subList(fromIndex, Math.min(nodes.size(), fromIndex + TREE_BATCH_SIZE))) {
+                    int parent = nodeMapping.getParent(node);
+                    Integer parentId = parent == startNode ? startId : nodeMapping.getId(parent);
+                    // nodes left without id (their parent was not created) are created one by one later
+                    if (parentId != null || parent == NodeMapping.ROOT) {
+                        batch.add(node);
+                        items.add(newTrackerItemWithParent(nodeMapping.getSegment(node), trackerId, parentId));
                     }
-                } else {
-                    result = nodeMapping.getNodeIdMapping().get(segment);
+                }
+                if (items.isEmpty()) {
+                    continue;
+                }
+
+                TrackerItemDto[] createdItems = rest.postTrackerItems(items);
+                for (int i = 0; i < createdItems.length && i < batch.size(); i++) {
+                    int node = batch.get(i);
+                    nodeMapping.add(nodeMapping.getParent(node), nodeMapping.getSegment(node), createdItems[i].getId());
+                    createdIds.add(createdItems[i].getId());
                 }
             }
         }
+        XUnitUtil.log(listener, String.format("Created %s items in tracker %s", createdIds.size(), trackerId));
 
-        return result;
+        if (status != null) {
+            for (int fromIndex = 0; fromIndex < createdIds.size(); fromIndex += TREE_BATCH_SIZE) {
+                List<TestCaseDto> testCaseDtos = new ArrayList<>();
+                for (Integer id : createdIds.subList(fromIndex, Math.min(createdIds.size(), fromIndex + TREE_BATCH_SIZE))) {
+                    testCaseDtos.add(new TestCaseDto(id, status));
+                }
+                updateTrackerItems(testCaseDtos);
+            }
+        }
     }
 
-    private Integer postTrackerItemWithParent(String path, Integer trackerId, Integer parentId) throws IOException {
-        String name = path.substring(path.lastIndexOf(".") + 1);
+    /**
+     * @return the node of the folder if it is part of the tree, otherwise the root
+     */
+    private int getStartNode(NodeMapping nodeMapping, Integer folder) {
+        int folderNode = nodeMapping.getNode(folder);
+        if (folderNode != NodeMapping.NONE && nodeMapping.getPath(folderNode) != null) {
+            return folderNode;
+        }
+        return NodeMapping.ROOT;
+    }
+
+    private TestRunDto newTrackerItemWithParent(String name, Integer trackerId, Integer parentId) {
         String tracker = String.format("/tracker/%s", trackerId);
         TestRunDto testCaseDto = new TestRunDto(name, tracker, parentId);
         testCaseDto.setDescription("--");
@@ -281,20 +728,156 @@ public class CodebeamerApiClient {
             testCaseDto.setType(TEST_CASE_TYPE_NAME);
         }
 
-        return rest.postTrackerItem(testCaseDto).getId();
+        return testCaseDto;
+    }
+
+    /**
+     * Returns the tree of the tracker, from the persistent cache updated with the recently modified items if possible,
+     * otherwise by fetching all items of the tracker.
+     */
+    private TrackerTree getTrackerTree(Integer trackerId) throws IOException {
+        long syncStart = System.currentTimeMillis();
+        TrackerTree tree = trackerTreeCache != null ? trackerTreeCache.read(trackerId) : null;
+        if (tree != null) {
+            try {
+                if (updateTrackerTree(tree)) {
+                    XUnitUtil.log(listener, String.format("Tracker %s loaded from cache with %s items", trackerId, tree.getItemCount()));
+                } else {
+                    tree = null;
+                }
+            } catch (IOException e) {
+                XUnitUtil.log(listener, String.format("Could not update cached tracker %s: %s", trackerId, e.getMessage()));
+                tree = null;
+            }
+        }
+
+        if (tree == null) {
+            TrackerTreeBuilder treeBuilder = new TrackerTreeBuilder();
+            getTrackerItems(trackerId, treeBuilder);
+            tree = treeBuilder.build(trackerId, syncStart);
+        }
+
+        tree.setSyncedAt(syncStart);
+        return tree;
+    }
+
+    /**
+     * Applies the items modified since the last sync to the cached tree.
+     *
+     * @return false if the cached tree can not be updated incrementally (moved, renamed or deleted items)
+     */
+    private boolean updateTrackerTree(TrackerTree tree) throws IOException {
+        Integer trackerId = tree.getTrackerId();
+        Date since = new Date(tree.getSyncedAt() - CACHE_SYNC_MARGIN);
+
+        PagedTrackerItemsDto pagedTrackerItemsDto = rest.getTrackerItemsModifiedSince(trackerId, since, 1);
+        if (pagedTrackerItemsDto.getTotal() > CACHE_SYNC_MAX_CHANGES) {
+            return false; // too many changes, a complete reload is cheaper
+        }
+
+        // the query result does not contain the hierarchy, so the modified items are fetched one by one, parents first
+        TrackerItemDto[] modified = pagedTrackerItemsDto.getItems() != null ? pagedTrackerItemsDto.getItems() : new TrackerItemDto[0];
+        Arrays.sort(modified, new Comparator<TrackerItemDto>() {
+            @Override
+            public int compare(TrackerItemDto o1, TrackerItemDto o2) {
+                return o1.getId().intValue() - o2.getId().intValue();
+            }
+        });
+
+        NodeMapping nodeMapping = tree.getNodeMapping();
+        for (TrackerItemDto item : getTrackerItems(modified)) {
+            int parentNode = NodeMapping.ROOT;
+            if (item.getParent() != null) {
+                parentNode = nodeMapping.getNode(item.getParent().getId());
+                if (parentNode == NodeMapping.NONE) {
+                    return false;
+                }
+            }
+
+            int cachedNode = nodeMapping.getNode(item.getId());
+            if (cachedNode == NodeMapping.NONE) {
+                nodeMapping.add(parentNode, item.getName(), item.getId());
+            } else if (nodeMapping.getParent(cachedNode) != parentNode || !nodeMapping.getSegment(cachedNode).equals(item.getName())) {
+                return false;
+            }
+
+            if (item.getVerifies() != null && item.getVerifies().length > 0) {
+                tree.getVerifiedIds().add(item.getId());
+            } else {
+                // the verifies links were removed
+                tree.getVerifiedIds().remove(item.getId());
+            }
+        }
+
+        // deleted items do not show up as modified, but change the number of items
+        return rest.getTrackerItemCount(trackerId) == tree.getItemCount();
     }
 
-    public TrackerItemDto[] getTrackerItems(Integer trackerId) throws IOException {
-        PagedTrackerItemsDto pagedTrackerItemsDto = rest.getTrackerItems(trackerId, 1);
+    /**
+     * @return the complete items, fetched in parallel, in the order of the given ones
+     */
+    private List<TrackerItemDto> getTrackerItems(TrackerItemDto[] items) throws IOException {
+        List<TrackerItemDto> result = new ArrayList<>(items.length);
+        if (items.length == 0) {
+            return result;
+        }
+
+        ExecutorService executor = newExecutor("codeBeamer tracker item fetch", Math.min(PAGE_FETCH_THREADS, items.length));
+        try {
+            List<Future<TrackerItemDto>> futures = new ArrayList<>(items.length);
+            for (final TrackerItemDto item : items) {
+                futures.add(executor.submit(new Callable<TrackerItemDto>() {
+                    @Override
+                    public TrackerItemDto call() throws IOException {
+                        return rest.getTrackerItem(item.getId());
+                    }
+                }));
+            }
 
-        final int totalPages = (pagedTrackerItemsDto.getTotal() / PAGESIZE) + 1;
-        List<TrackerItemDto> items = new ArrayList(Arrays.asList(pagedTrackerItemsDto.getItems()));
-        for (int page = 2; page < totalPages; page++) {
-            pagedTrackerItemsDto = rest.getTrackerItems(trackerId, page);
-            items.addAll(Arrays.asList(pagedTrackerItemsDto.getItems()));
+            for (Future<TrackerItemDto> future : futures) {
+                result.add(getResult(future));
+            }
+        } finally {
+            executor.shutdownNow();
         }
+        return result;
+    }
 
-        return items.toArray(new TrackerItemDto[items.size()]);
+    private void saveTrackerTree(TrackerTree tree) {
+        if (trackerTreeCache != null) {
+            trackerTreeCache.write(tree);
+        }
+    }
+
+    /**
+     * Streams every item of the tracker into the consumer. The first page tells the total, the remaining pages are
+     * fetched in parallel, so the consumer has to be thread safe and must not depend on the order of the items.
+     */
+    public void getTrackerItems(final Integer trackerId, final TrackerItemConsumer consumer) throws IOException {
+        final int total = rest.getTrackerItems(trackerId, 1, consumer);
+        final int totalPages = (total + PAGESIZE - 1) / PAGESIZE;
+
+        if (totalPages > 1) {
+            ExecutorService executor = newExecutor("codeBeamer tracker page fetch", Math.min(PAGE_FETCH_THREADS, totalPages - 1));
+            try {
+                List<Future<Integer>> pages = new ArrayList<>(totalPages - 1);
+                for (int page = 2; page <= totalPages; page++) {
+                    final int currentPage = page;
+                    pages.add(executor.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws IOException {
+                            return rest.getTrackerItems(trackerId, currentPage, consumer);
+                        }
+                    }));
+                }
+
+                for (Future<Integer> page : pages) {
+                    getResult(page);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
     }
 
     private TrackerItemDto updateTestSetTestCases(Integer testSetId, Collection<Integer> testCases) throws IOException {
@@ -334,6 +917,27 @@ public class CodebeamerApiClient {
         return rest.getTrackerItem(itemId);
     }
 
+    private static ExecutorService newExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, new NamingThreadFactory(new DaemonThreadFactory(), name));
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for codeBeamer");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     public TrackerDto getTrackerType(Integer trackerId) throws IOException {
         return rest.getTrackerType(trackerId);
     }
@@ -345,12 +949,15 @@ public class CodebeamerApiClient {
         try {
             RepositoryDto repositoryDto = rest.getRepositoryUrl(name, "git");
             return String.format("[%s%s]", pluginConfiguration.getUri(), repositoryDto.getUri());
+        } catch (CircuitOpenException ex) {
+            // codeBeamer is not available, which does not tell whether it manages the repository
+            throw ex;
         } catch (IOException ex) {
             return "not managed by codeBeamer";
         }
     }
 
-    public String getCodeBeamerRepoUrlForSVN(String remote) {
+    public String getCodeBeamerRepoUrlForSVN(String remote) throws IOException {
         // We don't now for sure which part of the string is the name of the repository so we have to try until we succeed
         String[] segments = remote.split("/");
         // 0 = 'svn:' or 'http(s):', 1 = '', 2 = hostname
@@ -359,10 +966,158 @@ public class CodebeamerApiClient {
             try {
                 RepositoryDto repositoryDto = rest.getRepositoryUrl(segment, "svn");
                 return String.format("[%s%s]", pluginConfiguration.getUri(), repositoryDto.getUri());
+            } catch (CircuitOpenException ex) {
+                throw ex;
             } catch (IOException ex) {
                 continue;
             }
         }
         return "not managed by codeBeamer";
     }
+
+    /**
+     * Upload of test results which are still being produced: the test runs are created chunk by chunk while the tests
+     * run, the first chunk also creates the Test Set and the parent test run, {@link #finish(String)} completes them.
+     *
+     * A chunk which fails is retried with the next one, the in-memory journal skips the batches already created.
+     */
+    public class IncrementalUpload {
+        private final String buildIdentifier;
+        private final UploadJournal journal;
+        private final List<TestResultItem> pending = new ArrayList<>();
+        private final Map<String, Integer> testCaseIds = new LinkedHashMap<>();
+        private int uploadedCount;
+        private int testCount;
+        private int successCount;
+        private int failCount;
+
+        private Integer testSetId;
+        private Integer parentTestRunId;
+
+        private IncrementalUpload(String buildIdentifier) throws IOException {
+            this.buildIdentifier = buildIdentifier;
+            this.journal = UploadJournal.open(null, null);
+        }
+
+        public synchronized void add(TestResults chunk) {
+            for (TestResultItem test : chunk) {
+                pending.add(test);
+            }
+            testCount += chunk.getTestSummary().getTestCount();
+            successCount += chunk.getTestSummary().getSuccessCount();
+            failCount += chunk.getTestSummary().getFailCount();
+        }
+
+        /**
+         * Creates the test runs of the test results added since the last call.
+         */
+        public synchronized void flush() throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            if (parentTestRunId == null) {
+                XUnitUtil.log(listener, "Starting incremental xUnit tests upload");
+                if (testSetId == null) {
+                    prepareUpload();
+                    testSetId = createTestSet(buildIdentifier, journal);
+                }
+                // result and test cases are only known when all tests finished
+                parentTestRunId = createParentTestRun(buildIdentifier, "Tests are running", null, testSetId,
+                        Collections.<Integer>emptyList(), journal);
+            }
+
+            try {
+                testCaseIds.putAll(resolveTestCases(getTestNames(pending)));
+                uploadTestRuns(pending, uploadedCount, testCaseIds, testSetId, parentTestRunId, failCount > 0, journal);
+            } catch (UnexpectedStatusException e) {
+                if (e.isRejectedContent()) {
+                    invalidateTrackerTrees();
+                }
+                throw e;
+            }
+            // the uploaded test results are dropped, only their names and Test Case ids are kept
+            uploadedCount += pending.size();
+            pending.clear();
+        }
+
+        /**
+         * Uploads the remaining test results and completes the parent test run and the Test Set.
+         *
+         * @param parentMarkup wiki markup of the build, scm and test report info
+         */
+        public synchronized void finish(String parentMarkup) throws IOException {
+            if (testCount == 0) {
+                XUnitUtil.log(listener, "No test results found, nothing to upload");
+                return;
+            }
+
+            flush();
+
+            TestRunDto parentTestRun = new TestRunDto();
+            parentTestRun.setUri("/item/" + parentTestRunId);
+            parentTestRun.setResult(failCount == 0 ? XUnitUtil.SUCCESS_STATUS : XUnitUtil.FAILED_STATUS);
+            parentTestRun.setTestCaseIds(testCaseIds.values());
+            parentTestRun.setDescription(new TestSummary(testCount, successCount, failCount).toWikiMarkup() + parentMarkup);
+            parentTestRun.setDescFormat("Wiki");
+            rest.updateTestRun(parentTestRun);
+
+            finishUpload(testSetId, parentTestRunId, testCaseIds.values(), journal);
+        }
+
+        public synchronized int getUploadedCount() {
+            return uploadedCount;
+        }
+    }
+
+    /**
+     * Creates the test runs of one batch and closes them with their spent time, can run in parallel with other batches.
+     */
+    private class TestRunBatch implements Callable<TestRunBatch> {
+        private final UploadJournal journal;
+        private final int fromIndex;
+        private final List<TestResultItem> tests;
+        private final List<TestRunDto> testRuns;
+        private TrackerItemDto[] createdRuns;
+        private long millis;
+
+        TestRunBatch(UploadJournal journal, int fromIndex, List<TestResultItem> tests, List<TestRunDto> testRuns) {
+            this.journal = journal;
+            this.fromIndex = fromIndex;
+            this.tests = tests;
+            this.testRuns = testRuns;
+        }
+
+        @Override
+        public TestRunBatch call() throws IOException {
+            long start = System.currentTimeMillis();
+            createdRuns = rest.postTrackerItems(testRuns);
+            Integer[] runIds = getIds(createdRuns);
+            journal.batchCreated(fromIndex, runIds);
+
+            // older codeBeamer versions ignore status and spent time on creation, they are set with a second request
+            if (!isStatusOnCreateSupported) {
+                closeTestRuns(runIds, tests);
+                journal.batchClosed(fromIndex);
+            }
+            millis = System.currentTimeMillis() - start;
+            return this;
+        }
+
+        int getFromIndex() {
+            return fromIndex;
+        }
+
+        List<TestResultItem> getTests() {
+            return tests;
+        }
+
+        TrackerItemDto[] getCreatedRuns() {
+            return createdRuns;
+        }
+
+        long getMillis() {
+            return millis;
+        }
+    }
 }
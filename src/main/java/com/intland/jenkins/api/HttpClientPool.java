@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import hudson.init.Terminator;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one pooled, keep-alive http client per codeBeamer uri and credential, so connections (and their TLS sessions)
+ * are reused by every request of an upload and by every build talking to the same server. The client is looked up for
+ * every request, a client without requests for clientIdleTimeout is closed, e.g. after the credentials of a server
+ * were changed.
+ *
+ * The pool can be tuned with the following system properties (prefixed with the name of this class):
+ * maxTotal, maxPerRoute, validateAfterInactivity (ms), idleTimeout (ms), keepAlive (ms) and clientIdleTimeout (ms).
+ */
+public class HttpClientPool {
+    private static final Logger LOGGER = Logger.getLogger(HttpClientPool.class.getName());
+    private static final String PROPERTY_PREFIX = HttpClientPool.class.getName() + ".";
+
+    public static final int MAX_TOTAL = Integer.getInteger(PROPERTY_PREFIX + "maxTotal", 50);
+    public static final int MAX_PER_ROUTE = Integer.getInteger(PROPERTY_PREFIX + "maxPerRoute", 20);
+    public static final int VALIDATE_AFTER_INACTIVITY = Integer.getInteger(PROPERTY_PREFIX + "validateAfterInactivity", 2000); // ms
+    public static final int IDLE_TIMEOUT = Integer.getInteger(PROPERTY_PREFIX + "idleTimeout", 60000); // ms
+    public static final int KEEP_ALIVE = Integer.getInteger(PROPERTY_PREFIX + "keepAlive", 60000); // ms
+    public static final long CLIENT_IDLE_TIMEOUT = Long.getLong(PROPERTY_PREFIX + "clientIdleTimeout", 600000L); // ms
+
+    private static final Map<String, PooledClient> CLIENTS = new HashMap<>();
+
+    private HttpClientPool() {
+    }
+
+    /**
+     * @param uri        codeBeamer base uri
+     * @param authHeader value of the Authorization header sent with every request of the client
+     */
+    public static synchronized CloseableHttpClient getClient(String uri, String authHeader) {
+        long now = System.currentTimeMillis();
+        evictIdleClients(now);
+
+        String key = uri + "\n" + authHeader;
+        PooledClient pooledClient = CLIENTS.get(key);
+        if (pooledClient == null) {
+            pooledClient = new PooledClient(createClient(authHeader));
+            CLIENTS.put(key, pooledClient);
+        }
+        pooledClient.lastUsed = now;
+        return pooledClient.client;
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        for (PooledClient pooledClient : CLIENTS.values()) {
+            close(pooledClient.client);
+        }
+        CLIENTS.clear();
+    }
+
+    private static void evictIdleClients(long now) {
+        Iterator<PooledClient> clients = CLIENTS.values().iterator();
+        while (clients.hasNext()) {
+            PooledClient pooledClient = clients.next();
+            if (now - pooledClient.lastUsed > CLIENT_IDLE_TIMEOUT) {
+                clients.remove();
+                close(pooledClient.client);
+            }
+        }
+    }
+
+    private static void close(CloseableHttpClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close http client", e);
+        }
+    }
+
+    private static CloseableHttpClient createClient(String authHeader) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        // http://stackoverflow.com/questions/9539141/httpclient-sends-out-two-requests-when-using-basic-auth
+        HashSet<Header> defaultHeaders = new HashSet<Header>();
+        defaultHeaders.add(new BasicHeader(HttpHeaders.AUTHORIZATION, authHeader));
+
+        return HttpClientBuilder
+                .create()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(new LimitedKeepAliveStrategy())
+                .evictExpiredConnections()
+                .evictIdleConnections((long) IDLE_TIMEOUT, TimeUnit.MILLISECONDS)
+                .setDefaultHeaders(defaultHeaders)
+                .build();
+    }
+
+    private static class PooledClient {
+        private final CloseableHttpClient client;
+        private long lastUsed;
+
+        PooledClient(CloseableHttpClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * Honors the Keep-Alive header of the server, but never keeps a connection longer than {@link #KEEP_ALIVE}.
+     */
+    private static class LimitedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 && duration < KEEP_ALIVE ? duration : KEEP_ALIVE;
+        }
+    }
+}
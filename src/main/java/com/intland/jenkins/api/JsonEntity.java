@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.commons.io.Charsets;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Request body serialized by Jackson, gzipped if it has at least compressionThreshold bytes.
+ *
+ * Bodies smaller than bufferLimit (a system property prefixed with the name of this class) are serialized once and
+ * sent with a Content-Length. Larger bodies, and bodies whose estimated size exceeds it, are serialized straight to the
+ * connection for every attempt and sent chunked, so no copy of them is kept. A bufferLimit above the largest batch turns chunking off, for proxies and
+ * servers rejecting chunked requests.
+ */
+public class JsonEntity extends AbstractHttpEntity {
+    private static final int PREVIEW_BYTES = 4096;
+    private static final int BUFFER_LIMIT = Integer.getInteger(JsonEntity.class.getName() + ".bufferLimit", 1024 * 1024);
+
+    private final ObjectWriter writer;
+    private final Object value;
+    private final boolean compressed;
+    private final byte[] content; // null if the body is streamed
+
+    /**
+     * @param compressionThreshold bodies of at least this many bytes are gzipped, 0 to never compress
+     */
+    public JsonEntity(ObjectWriter writer, Object value, int compressionThreshold) throws IOException {
+        this(writer, value, compressionThreshold, 0);
+    }
+
+    /**
+     * @param estimatedSize expected number of bytes of the body, bodies expected to exceed bufferLimit are streamed
+     *                      without serializing them up front
+     */
+    public JsonEntity(ObjectWriter writer, Object value, int compressionThreshold, long estimatedSize) throws IOException {
+        this.writer = writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.value = value;
+
+        if (estimatedSize >= BUFFER_LIMIT) {
+            this.compressed = compressionThreshold > 0 && estimatedSize >= compressionThreshold;
+            this.content = null;
+        } else {
+            CappedOutputStream buffer = new CappedOutputStream(Math.max(BUFFER_LIMIT, compressionThreshold));
+            serialize(buffer);
+            this.compressed = compressionThreshold > 0 && buffer.getCount() >= compressionThreshold;
+            if (buffer.isCapped()) {
+                this.content = null; // larger than estimated
+            } else {
+                this.content = compressed ? gzip(buffer.toByteArray()) : buffer.toByteArray();
+            }
+        }
+
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        if (compressed) {
+            setContentEncoding("gzip");
+        }
+        setChunked(content == null);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return content != null ? content.length : -1;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the body is streamed, it is only written with {@link #writeTo(OutputStream)}
+     */
+    @Override
+    public InputStream getContent() {
+        if (content == null) {
+            throw new UnsupportedOperationException("Streamed request body, no copy of it is kept");
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (content != null) {
+            out.write(content);
+        } else if (compressed) {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, 8192);
+            writer.writeValue(gzip, value);
+            gzip.finish();
+        } else {
+            writer.writeValue(out, value);
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * @return the beginning of the (uncompressed) body, for log messages
+     */
+    @Override
+    public String toString() {
+        if (content != null && !compressed) {
+            int length = Math.min(content.length, PREVIEW_BYTES);
+            return new String(content, 0, length, Charsets.UTF_8) + (length < content.length ? "..." : "");
+        }
+
+        CappedOutputStream preview = new CappedOutputStream(PREVIEW_BYTES);
+        try {
+            serialize(preview);
+        } catch (IOException e) {
+            return "<" + e.getMessage() + ">";
+        }
+        return preview.toString() + (preview.isCapped() ? "..." : "");
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream compressedBody = new ByteArrayOutputStream(body.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressedBody, 8192);
+        gzip.write(body);
+        gzip.finish();
+        return compressedBody.toByteArray();
+    }
+
+    private void serialize(CappedOutputStream out) throws IOException {
+        try {
+            writer.writeValue(out, value);
+        } catch (IOException e) {
+            // serialization is stopped by the stream once the limit is reached
+            if (!out.isCapped()) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Keeps the bytes written to it and fails once the limit is reached.
+     */
+    private static class CappedOutputStream extends OutputStream {
+        private final int limit;
+        private final ByteArrayOutputStream kept;
+        private long count;
+        private boolean capped;
+
+        CappedOutputStream(int limit) {
+            this.limit = limit;
+            this.kept = new ByteArrayOutputStream(Math.min(limit, 8192));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int accepted = (int) Math.min(len, limit - count);
+            kept.write(b, off, accepted);
+            count += accepted;
+            if (accepted < len || count >= limit) {
+                capped = true;
+                throw new EOFException("limit of " + limit + " bytes reached");
+            }
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        boolean isCapped() {
+            return capped;
+        }
+
+        byte[] toByteArray() {
+            return kept.toByteArray();
+        }
+
+        @Override
+        public String toString() {
+            return new String(kept.toByteArray(), Charsets.UTF_8);
+        }
+    }
+}
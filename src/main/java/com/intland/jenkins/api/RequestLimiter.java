@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits the requests all builds send to one codeBeamer server: a token bucket caps the requests per second, a counter
+ * the requests in flight. A limit of 0 means unlimited, limits can be changed while requests are waiting.
+ */
+public class RequestLimiter {
+    private static final Map<String, RequestLimiter> LIMITERS = new HashMap<>();
+
+    private double requestsPerSecond;
+    private int maxConcurrentRequests;
+
+    private int inFlight;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @return the limiter shared by every request to the codeBeamer uri, configured with the given limits
+     */
+    public static RequestLimiter get(String uri, double requestsPerSecond, int maxConcurrentRequests) {
+        RequestLimiter limiter;
+        synchronized (LIMITERS) {
+            limiter = LIMITERS.get(uri);
+            if (limiter == null) {
+                limiter = new RequestLimiter();
+                LIMITERS.put(uri, limiter);
+            }
+        }
+        limiter.configure(requestsPerSecond, maxConcurrentRequests);
+        return limiter;
+    }
+
+    public synchronized void configure(double requestsPerSecond, int maxConcurrentRequests) {
+        if (requestsPerSecond != this.requestsPerSecond) {
+            this.requestsPerSecond = Math.max(0, requestsPerSecond);
+            this.tokens = Math.min(tokens, getCapacity());
+        }
+        this.maxConcurrentRequests = Math.max(0, maxConcurrentRequests);
+        notifyAll();
+    }
+
+    /**
+     * Blocks until the request may be sent, every call has to be followed by {@link #release()}.
+     */
+    public void acquire() throws InterruptedIOException {
+        try {
+            synchronized (this) {
+                while (maxConcurrentRequests > 0 && inFlight >= maxConcurrentRequests) {
+                    wait();
+                }
+                inFlight++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a codeBeamer connection");
+        }
+
+        try {
+            synchronized (this) {
+                // waits on the monitor, so a new rate set by configure applies to waiting requests right away
+                long waitMillis;
+                while ((waitMillis = takeToken()) > 0) {
+                    wait(waitMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a codeBeamer connection");
+        }
+    }
+
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise ms until the next token is available
+     */
+    private synchronized long takeToken() {
+        if (requestsPerSecond <= 0) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        tokens = Math.min(getCapacity(), tokens + (now - lastRefill) / 1e9 * requestsPerSecond);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / requestsPerSecond * 1000));
+    }
+
+    private double getCapacity() {
+        // allows bursts of up to one second worth of requests
+        return Math.max(1, requestsPerSecond);
+    }
+}
@@ -6,7 +6,12 @@
  */
 package com.intland.jenkins.api;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.intland.jenkins.XUnitUtil;
 import com.intland.jenkins.api.dto.*;
 import com.intland.jenkins.api.dto.trackerschema.TrackerSchemaDto;
@@ -14,24 +19,24 @@ import com.intland.jenkins.dto.PluginConfiguration;
 import hudson.model.TaskListener;
 import jcifs.util.Base64;
 import org.apache.commons.io.Charsets;
-import org.apache.http.Header;
-import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashSet;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 /**
  * @author mgansler
@@ -41,40 +46,56 @@ public class RestAdapter {
     private static final String PATH_VERSION = "/version";
 
     public static final int PAGESIZE = 500;
+    private static final String CBQL_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    private static final long MAX_WEST_ZONE_OFFSET = 12 * 60 * 60 * 1000; // ms, UTC-12:00
+    private static final ResponseReader<String> STRING_READER = new ResponseReader<String>() {
+        @Override
+        public String read(HttpResponse response) throws IOException {
+            return new BasicResponseHandler().handleResponse(response);
+        }
+    };
+
+    // readers and writers are immutable and thread safe, creating them once saves the type introspection per request
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader TRACKER_ITEM_READER = OBJECT_MAPPER.readerFor(TrackerItemDto.class);
+    private static final ObjectReader TRACKER_ITEMS_READER = OBJECT_MAPPER.readerFor(TrackerItemDto[].class);
+    private static final ObjectReader PAGED_TRACKER_ITEMS_READER = OBJECT_MAPPER.readerFor(PagedTrackerItemsDto.class);
+    private static final ObjectReader TRACKER_SCHEMA_READER = OBJECT_MAPPER.readerFor(TrackerSchemaDto.class);
+    private static final ObjectReader TRACKER_READER = OBJECT_MAPPER.readerFor(TrackerDto.class);
+    private static final ObjectReader REPOSITORY_READER = OBJECT_MAPPER.readerFor(RepositoryDto.class);
+    private static final ObjectWriter TEST_RUN_WRITER = OBJECT_MAPPER.writerFor(TestRunDto.class);
+    private static final ObjectWriter TEST_RUNS_WRITER = OBJECT_MAPPER.writerFor(new TypeReference<List<TestRunDto>>() {});
+    private static final ObjectWriter TRACKER_ITEM_WRITER = OBJECT_MAPPER.writerFor(TrackerItemDto.class);
+    private static final ObjectWriter TEST_CASE_WRITER = OBJECT_MAPPER.writerFor(TestCaseDto.class);
+    private static final ObjectWriter TEST_CASES_WRITER = OBJECT_MAPPER.writerFor(new TypeReference<List<TestCaseDto>>() {});
 
     private String baseUrl;
     private TaskListener listener;
     private PluginConfiguration pluginConfiguration;
 
-    private HttpClient client;
+    private String authHeader;
     private RequestConfig requestConfig;
-    private ObjectMapper objectMapper;
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private RequestLimiter requestLimiter;
+    private CircuitBreaker circuitBreaker;
 
     public RestAdapter(PluginConfiguration pluginConfiguration, int timeout, TaskListener listener) {
         this.baseUrl = pluginConfiguration.getUri() + "/rest";
         this.listener = listener;
         this.pluginConfiguration = pluginConfiguration;
 
-
-        // http://stackoverflow.com/questions/9539141/httpclient-sends-out-two-requests-when-using-basic-auth
         final String username = pluginConfiguration.getUsername();
         final String password = pluginConfiguration.getPassword();
-        final String authHeader = "Basic " + Base64.encode((username + ":" + password).getBytes(Charsets.UTF_8));
-
-        HashSet<Header> defaultHeaders = new HashSet<Header>();
-        defaultHeaders.add(new BasicHeader(HttpHeaders.AUTHORIZATION, authHeader));
-
-        this.client = HttpClientBuilder
-                .create()
-                .setDefaultHeaders(defaultHeaders)
-                .build();
+        this.authHeader = "Basic " + Base64.encode((username + ":" + password).getBytes(Charsets.UTF_8));
+        this.requestLimiter = RequestLimiter.get(pluginConfiguration.getUri(), pluginConfiguration.getRequestsPerSecond(),
+                pluginConfiguration.getMaxConcurrentRequests());
+        this.circuitBreaker = CircuitBreaker.get(pluginConfiguration.getUri());
         this.requestConfig = RequestConfig
                 .custom()
                 .setConnectionRequestTimeout(timeout)
                 .setConnectTimeout(timeout)
                 .setSocketTimeout(timeout * 4)
                 .build();
-        this.objectMapper = new ObjectMapper();
     }
 
     public String getVersion() throws IOException {
@@ -82,140 +103,314 @@ public class RestAdapter {
     }
 
     public TrackerSchemaDto getTestCaseTrackerSchema() throws IOException {
-        String json = executeGet(baseUrl + String.format("/tracker/%s/schema", this.pluginConfiguration.getTestCaseTrackerId()));
-        return objectMapper.readValue(json, TrackerSchemaDto.class);
+        return executeGet(baseUrl + String.format("/tracker/%s/schema", this.pluginConfiguration.getTestCaseTrackerId()),
+                RestAdapter.<TrackerSchemaDto>jsonReader(TRACKER_SCHEMA_READER));
     }
 
-    public PagedTrackerItemsDto getPagedTrackerItemForName(String name) throws IOException {
-        String cbQl = XUnitUtil.encodeParam(String.format("tracker.id IN ('%s') AND workItemStatus in ('Unset','InProgress') AND summary like '%s'", pluginConfiguration.getBugTrackerId(), name));
-        String json = executeGet(baseUrl + String.format("/query/page/1?queryString=%s&pagesize=1", cbQl));
-        return objectMapper.readValue(json, PagedTrackerItemsDto.class);
+    /**
+     * Streams the unresolved items of the tracker whose summary starts with the prefix into the consumer.
+     *
+     * @return total number of matching items
+     */
+    public int getOpenTrackerItemsWithPrefix(Integer trackerId, String prefix, int page, final TrackerItemConsumer consumer) throws IOException {
+        String cbQl = XUnitUtil.encodeParam(String.format("tracker.id IN ('%s') AND workItemStatus in ('Unset','InProgress') AND summary like '%s%%'", trackerId, prefix));
+        return executeGet(baseUrl + String.format("/query/page/%s?queryString=%s&pagesize=%s", page, cbQl, PAGESIZE), new ResponseReader<Integer>() {
+            @Override
+            public Integer read(HttpResponse response) throws IOException {
+                return readPagedTrackerItems(response.getEntity().getContent(), consumer);
+            }
+        });
     }
 
     public PagedTrackerItemsDto getPagedTrackerItemsForName(Integer trackerId, String name) throws IOException {
-        String json = executeGet(baseUrl + String.format("/tracker/%s/items/or/name=%s/page/1", trackerId, XUnitUtil.encodeParam(name)));
-        return objectMapper.readValue(json, PagedTrackerItemsDto.class);
+        return executeGet(baseUrl + String.format("/tracker/%s/items/or/name=%s/page/1", trackerId, XUnitUtil.encodeParam(name)),
+                RestAdapter.<PagedTrackerItemsDto>jsonReader(PAGED_TRACKER_ITEMS_READER));
+    }
+
+    /**
+     * Parses the page straight from the response stream and hands the items to the consumer one by one.
+     *
+     * @return total number of items in the tracker
+     */
+    public int getTrackerItems(Integer trackerId, int page, final TrackerItemConsumer consumer) throws IOException {
+        return executeGet(baseUrl + String.format("/tracker/%s/items/page/%s?pagesize=%s", trackerId, page, PAGESIZE), new ResponseReader<Integer>() {
+            @Override
+            public Integer read(HttpResponse response) throws IOException {
+                return readPagedTrackerItems(response.getEntity().getContent(), consumer);
+            }
+        });
+    }
+
+    private int readPagedTrackerItems(InputStream content, TrackerItemConsumer consumer) throws IOException {
+        int total = 0;
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected response, paged tracker items expected");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("total".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                    total = parser.getIntValue();
+                } else if ("items".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(TRACKER_ITEM_READER.<TrackerItemDto>readValue(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return total;
+    }
+
+    public int getTrackerItemCount(Integer trackerId) throws IOException {
+        return executeGet(baseUrl + String.format("/tracker/%s/items/page/1?pagesize=1", trackerId),
+                RestAdapter.<PagedTrackerItemsDto>jsonReader(PAGED_TRACKER_ITEMS_READER)).getTotal();
     }
 
-    public PagedTrackerItemsDto getTrackerItems(Integer trackerId, int page) throws IOException {
-        String json = executeGet(baseUrl + String.format("/tracker/%s/items/page/%s?pagesize=%s", trackerId, page, PAGESIZE));
-        return objectMapper.readValue(json, PagedTrackerItemsDto.class);
+    /**
+     * codeBeamer reads the date of the query in a time zone not known here, the date is given in UTC and moved back by
+     * the largest offset of a zone west of UTC. The result may contain items modified up to a day before since, but
+     * none modified after it is left out.
+     */
+    public PagedTrackerItemsDto getTrackerItemsModifiedSince(Integer trackerId, Date since, int page) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(CBQL_DATE_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String cbQl = XUnitUtil.encodeParam(String.format("tracker.id IN ('%s') AND modifiedAt >= '%s'", trackerId,
+                dateFormat.format(new Date(since.getTime() - MAX_WEST_ZONE_OFFSET))));
+        return executeGet(baseUrl + String.format("/query/page/%s?queryString=%s&pagesize=%s", page, cbQl, PAGESIZE),
+                RestAdapter.<PagedTrackerItemsDto>jsonReader(PAGED_TRACKER_ITEMS_READER));
     }
 
     public TrackerItemDto getTrackerItem(Integer itemId) throws IOException {
-        String json = executeGet(baseUrl + String.format("/item/%s", itemId));
-        return objectMapper.readValue(json, TrackerItemDto.class);
+        return executeGet(baseUrl + String.format("/item/%s", itemId), RestAdapter.<TrackerItemDto>jsonReader(TRACKER_ITEM_READER));
     }
 
     public TrackerDto getTrackerType(Integer trackerId) throws IOException {
-        String json = executeGet(baseUrl + String.format("/tracker/%s", trackerId));
-        return objectMapper.readValue(json, TrackerDto.class);
+        return executeGet(baseUrl + String.format("/tracker/%s", trackerId), RestAdapter.<TrackerDto>jsonReader(TRACKER_READER));
     }
 
     public RepositoryDto getRepositoryUrl(String name, String type) throws IOException {
-        String json = executeGet(baseUrl + String.format("/%s/%s", type, name));
-        return objectMapper.readValue(json, RepositoryDto.class);
+        return executeGet(baseUrl + String.format("/%s/%s", type, name), RestAdapter.<RepositoryDto>jsonReader(REPOSITORY_READER));
     }
 
     private String executeGet(String uri) throws IOException {
+        return executeGet(uri, STRING_READER);
+    }
+
+    private <T> T executeGet(String uri, ResponseReader<T> reader) throws IOException {
         HttpGet get = new HttpGet(uri);
         get.setConfig(requestConfig);
 
-        try {
-            HttpResponse response = client.execute(get);
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == HttpStatus.SC_OK) {
-                return new BasicResponseHandler().handleResponse(response);
-            } else if (listener != null) { //listener is null when job is edited
-                InputStream responseStream = response.getEntity().getContent();
-                String warn = XUnitUtil.getStringFromInputStream(responseStream);
-                XUnitUtil.log(listener, String.format("WARNING (GET): %s, statusCode: %s, url: %s", warn, statusCode, uri));
-            }
-            throw new IOException(String.format("get returned with statusCode: %s", statusCode));
-        } finally {
-            get.releaseConnection();
-        }
+        return execute(get, HttpStatus.SC_OK, reader, null, "WARNING (GET): %s, statusCode: %s, url: %s", uri);
     }
 
     public TrackerItemDto postTrackerItem(TestRunDto testRunDto) throws IOException {
-        String content = objectMapper.writeValueAsString(testRunDto);
-        String response = executePost(baseUrl + "/item", content);
-        return objectMapper.readValue(response, TrackerItemDto.class);
+        return postTrackerItem(testRunDto, null);
+    }
+
+    /**
+     * @param duplicateCheck finds the item if the request reached codeBeamer but the response got lost, so the request
+     *                       can be retried without creating the item twice. Without it such requests are not retried.
+     */
+    public TrackerItemDto postTrackerItem(TestRunDto testRunDto, DuplicateCheck<TrackerItemDto> duplicateCheck) throws IOException {
+        return executePost(baseUrl + "/item", createEntity(TEST_RUN_WRITER, testRunDto),
+                RestAdapter.<TrackerItemDto>jsonReader(TRACKER_ITEM_READER), duplicateCheck);
     }
 
     public TrackerItemDto[] postTrackerItems(List<TestRunDto> testRunDtos) throws IOException {
         if (testRunDtos.size() > 1) {
-            String content = objectMapper.writeValueAsString(testRunDtos);
-            String response = executePost(baseUrl + "/items", content);
-            return objectMapper.readValue(response, TrackerItemDto[].class);
+            return executePost(baseUrl + "/items", createEntity(TEST_RUNS_WRITER, testRunDtos, AdaptiveBatchSizer.estimateSize(testRunDtos)),
+                    RestAdapter.<TrackerItemDto[]>jsonReader(TRACKER_ITEMS_READER), null);
         } else {
             return new TrackerItemDto[] {postTrackerItem(testRunDtos.get(0))};
         }
     }
 
-    private String executePost(String uri, String content) throws IOException {
-        StringEntity entity = new StringEntity(content, Charsets.UTF_8);
-        entity.setContentType("application/json");
+    /**
+     * @return a check finding the item with the given name in the tracker
+     */
+    public DuplicateCheck<TrackerItemDto> findByName(final Integer trackerId, final String name) {
+        return new DuplicateCheck<TrackerItemDto>() {
+            @Override
+            public TrackerItemDto findCreated() throws IOException {
+                PagedTrackerItemsDto pagedTrackerItemsDto = getPagedTrackerItemsForName(trackerId, name);
+                return pagedTrackerItemsDto.getTotal() > 0 ? pagedTrackerItemsDto.getItems()[0] : null;
+            }
+        };
+    }
 
+    private <T> T executePost(String uri, JsonEntity entity, ResponseReader<T> reader, DuplicateCheck<T> duplicateCheck) throws IOException {
         HttpPost post = new HttpPost(uri);
         post.setConfig(requestConfig);
         post.setEntity(entity);
 
-        try {
-            HttpResponse response = client.execute(post);
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == HttpStatus.SC_CREATED) {
-                return new BasicResponseHandler().handleResponse(response);
-            } else if (listener != null) {
-                InputStream responseStream = response.getEntity().getContent();
-                String error = XUnitUtil.getStringFromInputStream(responseStream);
-                XUnitUtil.log(listener, String.format("ERROR (POST): %s, content: %s", error, content));
-            }
-            throw new IOException(String.format("post returned with statusCode: %s", statusCode));
-        } finally {
-            post.releaseConnection();
-        }
+        return execute(post, HttpStatus.SC_CREATED, reader, duplicateCheck, "ERROR (POST): %s, statusCode: %s, content: %s", entity);
     }
 
     public TrackerItemDto updateTrackerItem(TrackerItemDto trackerItemDto) throws IOException {
-        String content = objectMapper.writeValueAsString(trackerItemDto);
-        String response = executePut(baseUrl + "/item", content);
-        return objectMapper.readValue(response, TrackerItemDto.class);
+        return executePut(baseUrl + "/item", createEntity(TRACKER_ITEM_WRITER, trackerItemDto));
+    }
+
+    public TrackerItemDto updateTestRun(TestRunDto testRunDto) throws IOException {
+        return executePut(baseUrl + "/item", createEntity(TEST_RUN_WRITER, testRunDto));
     }
 
     public TrackerItemDto updateTestCaseItem(TestCaseDto testCaseDto) throws IOException {
-        String content = objectMapper.writeValueAsString(testCaseDto);
-        String response = executePut(baseUrl + "/item", content);
-        return objectMapper.readValue(response, TrackerItemDto.class);
+        return executePut(baseUrl + "/item", createEntity(TEST_CASE_WRITER, testCaseDto));
     }
 
     public TrackerItemDto updateTestCaseItems(List<TestCaseDto> testCaseDtos) throws IOException {
-        String content = objectMapper.writeValueAsString(testCaseDtos);
-        String response = executePut(baseUrl + "/item", content);
-        return objectMapper.readValue(response, TrackerItemDto.class);
+        return executePut(baseUrl + "/item", createEntity(TEST_CASES_WRITER, testCaseDtos));
     }
 
-    private String executePut(String uri, String content) throws IOException {
-        StringEntity entity = new StringEntity(content, Charsets.UTF_8);
-        entity.setContentType("application/json");
-
+    private TrackerItemDto executePut(String uri, JsonEntity entity) throws IOException {
         HttpPut put = new HttpPut(uri);
         put.setConfig(requestConfig);
         put.setEntity(entity);
 
-        try {
-            HttpResponse response = client.execute(put);
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == HttpStatus.SC_OK) {
-                return new BasicResponseHandler().handleResponse(response);
-            } else if (listener != null) {
-                InputStream responseStream = response.getEntity().getContent();
-                String warning = XUnitUtil.getStringFromInputStream(responseStream);
-                XUnitUtil.log(listener, String.format("WARNING (PUT): %s, statusCode: %s, content: %s", warning, statusCode, content));
+        return execute(put, HttpStatus.SC_OK, RestAdapter.<TrackerItemDto>jsonReader(TRACKER_ITEM_READER), null,
+                "WARNING (PUT): %s, statusCode: %s, content: %s", entity);
+    }
+
+    /**
+     * Bodies above the compression threshold are sent gzipped, responses are gzipped anyway: the client asks for it
+     * with Accept-Encoding and inflates them transparently.
+     */
+    private JsonEntity createEntity(ObjectWriter writer, Object value) throws IOException {
+        return createEntity(writer, value, 0);
+    }
+
+    private JsonEntity createEntity(ObjectWriter writer, Object value, long estimatedSize) throws IOException {
+        return new JsonEntity(writer, value, pluginConfiguration.getCompressionThreshold(), estimatedSize);
+    }
+
+    /**
+     * @return a reader parsing the response body straight from the connection
+     */
+    private static <T> ResponseReader<T> jsonReader(final ObjectReader reader) {
+        return new ResponseReader<T>() {
+            @Override
+            public T read(HttpResponse response) throws IOException {
+                try (InputStream content = response.getEntity().getContent()) {
+                    return reader.readValue(content);
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends the request until it succeeds or the {@link RetryPolicy} gives up. GETs and PUTs are idempotent, a POST which
+     * may have reached codeBeamer is only sent again if the duplicate check does not find what it created.
+     *
+     * @param errorFormat format of the message logged for an unexpected status, gets the response, the status code and
+     *                    the error detail
+     */
+    private <T> T execute(HttpRequestBase request, int expectedStatus, ResponseReader<T> reader, DuplicateCheck<T> duplicateCheck,
+                          String errorFormat, Object errorDetail) throws IOException {
+        boolean idempotent = !(request instanceof HttpPost);
+        boolean retryable = idempotent || duplicateCheck != null;
+        for (int attempt = 1; ; attempt++) {
+            long retryAfter = -1;
+            boolean maybeProcessed = false;
+            String failure = null;
+
+            // the permit is held until the response is consumed, but not while waiting for the next attempt
+            requestLimiter.acquire();
+            if (!circuitBreaker.allowRequest()) {
+                requestLimiter.release();
+                throw new CircuitOpenException(pluginConfiguration.getUri(), circuitBreaker.getRetryAt());
+            }
+
+            // the outcome of the attempt, a request ending without one (e.g. an Error) counts as failed
+            boolean available = false;
+            boolean retrying = false;
+            try {
+                CloseableHttpResponse response = null;
+                try {
+                    // clients are pooled per server and credential, connections are kept alive between requests and builds
+                    response = HttpClientPool.getClient(pluginConfiguration.getUri(), authHeader).execute(request);
+                } catch (IOException e) {
+                    if (!retryPolicy.shouldRetry(attempt, e, retryable)) {
+                        throw e;
+                    }
+                    retrying = true;
+                    maybeProcessed = !RetryPolicy.isNotSent(e);
+                    failure = e.toString();
+                }
+
+                if (response != null) {
+                    try {
+                        int statusCode = response.getStatusLine().getStatusCode();
+                        available = !CircuitBreaker.isFailure(statusCode);
+
+                        if (statusCode == expectedStatus) {
+                            return reader.read(response);
+                        }
+
+                        String error = XUnitUtil.getStringFromInputStream(response.getEntity().getContent());
+                        if (!retryPolicy.shouldRetry(attempt, statusCode, retryable)) {
+                            if (listener != null) { //listener is null when job is edited
+                                XUnitUtil.log(listener, String.format(errorFormat, error, statusCode, errorDetail));
+                            }
+                            throw new UnexpectedStatusException(request.getMethod(), statusCode);
+                        }
+                        retrying = true;
+                        maybeProcessed = !RetryPolicy.isRejected(statusCode);
+                        retryAfter = RetryPolicy.getRetryAfter(response);
+                        failure = "statusCode: " + statusCode;
+                    } finally {
+                        release(response);
+                    }
+                }
+            } finally {
+                requestLimiter.release();
+                if (available) {
+                    circuitBreaker.recordSuccess();
+                } else if (retrying) {
+                    circuitBreaker.recordRetry();
+                } else {
+                    circuitBreaker.recordFailure();
+                }
+            }
+
+            if (!idempotent && maybeProcessed) {
+                T created = duplicateCheck.findCreated();
+                if (created != null) {
+                    return created;
+                }
+            }
+
+            long delay = retryPolicy.getDelay(attempt, retryAfter);
+            if (listener != null) {
+                XUnitUtil.log(listener, String.format("%s %s failed (%s), retrying in %s ms, attempt %s of %s",
+                        request.getMethod(), request.getURI().getPath(), failure, delay, attempt + 1, retryPolicy.getMaxAttempts()));
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry " + request.getMethod());
             }
-            throw new IOException(String.format("put returned with statusCode %s", statusCode));
-        } finally {
-            put.releaseConnection();
         }
     }
+
+    private void release(CloseableHttpResponse response) throws IOException {
+        // consuming the entity hands the connection back to the pool instead of closing it
+        EntityUtils.consumeQuietly(response.getEntity());
+        response.close();
+    }
+
+    private interface ResponseReader<T> {
+        T read(HttpResponse response) throws IOException;
+    }
+
+    public interface DuplicateCheck<T> {
+        /**
+         * @return what a request whose response got lost created, null if it created nothing
+         */
+        T findCreated() throws IOException;
+    }
 }
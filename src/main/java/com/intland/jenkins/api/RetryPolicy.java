@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.Random;
+import javax.net.ssl.SSLException;
+
+/**
+ * Decides whether a failed request is sent again and how long to wait before, using exponential backoff with jitter
+ * and the Retry-After header of 429 and 503 responses.
+ *
+ * Requests which did not reach codeBeamer (connection failures, 429 and 503) are retried for every verb. Failures after
+ * the request was sent (timeouts, dropped connections, 502 and 504) are only retried for idempotent requests, or for
+ * POSTs whose caller can tell whether the item was created anyway.
+ *
+ * Can be tuned with the following system properties (prefixed with the name of this class): maxAttempts, baseDelay (ms),
+ * maxDelay (ms) and maxRetryAfter (ms).
+ */
+public class RetryPolicy {
+    private static final String PROPERTY_PREFIX = RetryPolicy.class.getName() + ".";
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(
+            Integer.getInteger(PROPERTY_PREFIX + "maxAttempts", 5),
+            Long.getLong(PROPERTY_PREFIX + "baseDelay", 500L),
+            Long.getLong(PROPERTY_PREFIX + "maxDelay", 30000L),
+            Long.getLong(PROPERTY_PREFIX + "maxRetryAfter", 120000L));
+
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final long maxRetryAfter;
+    private final Random random = new Random();
+
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, long maxRetryAfter) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = Math.max(1, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+        this.maxRetryAfter = maxRetryAfter;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt    number of the failed attempt, starting with 1
+     * @param idempotent the request can be sent again even if codeBeamer processed it
+     */
+    public boolean shouldRetry(int attempt, int statusCode, boolean idempotent) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+
+        if (isRejected(statusCode)) {
+            return true;
+        }
+        return idempotent && (statusCode == HttpStatus.SC_BAD_GATEWAY || statusCode == HttpStatus.SC_GATEWAY_TIMEOUT);
+    }
+
+    public boolean shouldRetry(int attempt, IOException e, boolean idempotent) {
+        if (attempt >= maxAttempts || e instanceof UnknownHostException || e instanceof SSLException) {
+            return false;
+        }
+        return idempotent || isNotSent(e);
+    }
+
+    /**
+     * @return true if the request failed before it reached codeBeamer
+     */
+    public static boolean isNotSent(IOException e) {
+        return e instanceof ConnectException
+                || e instanceof ConnectTimeoutException
+                || e instanceof ConnectionPoolTimeoutException;
+    }
+
+    /**
+     * @return true if codeBeamer refused the request without processing it
+     */
+    public static boolean isRejected(int statusCode) {
+        return statusCode == SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE;
+    }
+
+    /**
+     * @param retryAfter delay requested by codeBeamer (ms), negative if none
+     * @return ms to wait before the next attempt
+     */
+    public long getDelay(int attempt, long retryAfter) {
+        long backoff = baseDelay << Math.min(attempt - 1, 20);
+        backoff = Math.min(maxDelay, backoff);
+
+        // half of the backoff is fixed, the other half random, so clients failing together do not retry together
+        long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2 + 1));
+        if (retryAfter > 0) {
+            delay = Math.max(delay, Math.min(retryAfter, maxRetryAfter));
+        }
+        return delay;
+    }
+
+    /**
+     * @return the delay requested by the Retry-After header (ms), -1 if there is none
+     */
+    public static long getRetryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null || header.getValue() == null) {
+            return -1;
+        }
+
+        String value = header.getValue().trim();
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+}
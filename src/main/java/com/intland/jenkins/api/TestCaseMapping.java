@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import com.intland.jenkins.dto.PluginConfiguration;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the Test Case ids the test names of the last upload of a job were resolved to. While a job keeps running the
+ * same tests against the same trackers, the next upload reuses them instead of fetching and reconciling the trees.
+ *
+ * The mapping is identified by a fingerprint of the test names and the tracker settings. Mappings older than the
+ * maxAge system property (ms, prefixed with the name of this class) are ignored, which forces a reconciliation now and
+ * then, e.g. to notice deleted Test Cases.
+ */
+public class TestCaseMapping {
+    private static final Logger LOGGER = Logger.getLogger(TestCaseMapping.class.getName());
+    private static final long MAX_AGE = Long.getLong(TestCaseMapping.class.getName() + ".maxAge", 24 * 60 * 60 * 1000L); // ms
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    public TestCaseMapping(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the Test Case ids by test name, or null if there is no usable mapping for the fingerprint
+     */
+    public synchronized Map<String, Integer> read(String fingerprint) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(fingerprint)) {
+                return null;
+            }
+
+            long savedAt = in.readLong();
+            if (System.currentTimeMillis() - savedAt > MAX_AGE) {
+                return null;
+            }
+
+            int count = in.readInt();
+            Map<String, Integer> testCaseIds = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                testCaseIds.put(name, in.readInt());
+            }
+            return testCaseIds;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read test case mapping " + file, e);
+            return null;
+        }
+    }
+
+    public synchronized void write(String fingerprint, Map<String, Integer> testCaseIds) {
+        try {
+            File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(fingerprint);
+                    out.writeLong(System.currentTimeMillis());
+                    out.writeInt(testCaseIds.size());
+                    for (Map.Entry<String, Integer> entry : testCaseIds.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        out.writeInt(entry.getValue());
+                    }
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write test case mapping " + file, e);
+        }
+    }
+
+    /**
+     * Drops the mapping, e.g. because an upload using it failed.
+     */
+    public synchronized void invalidate() {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete test case mapping " + file, e);
+        }
+    }
+
+    /**
+     * @return a hash of the (sorted) test names and of the settings the Test Cases depend on
+     */
+    public static String fingerprint(Collection<String> testNames, PluginConfiguration pluginConfiguration) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, pluginConfiguration.getUri());
+        update(digest, pluginConfiguration.getTestCaseTrackerId());
+        update(digest, pluginConfiguration.getTestCaseParentId());
+        update(digest, pluginConfiguration.getRequirementTrackerId());
+        update(digest, pluginConfiguration.getRequirementParentId());
+        update(digest, pluginConfiguration.getRequirementDepth());
+
+        List<String> sortedNames = new ArrayList<>(testNames);
+        Collections.sort(sortedNames);
+        for (String name : sortedNames) {
+            update(digest, name);
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (byte b : digest.digest()) {
+            fingerprint.append(String.format("%02x", b));
+        }
+        return fingerprint.toString();
+    }
+
+    private static void update(MessageDigest digest, Object value) {
+        digest.update(String.valueOf(value).getBytes(UTF8));
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import com.intland.jenkins.api.dto.TrackerItemDto;
+
+import java.io.IOException;
+
+/**
+ * Receives tracker items one by one while a page is being parsed, so pages never have to be held in memory as a whole.
+ */
+public interface TrackerItemConsumer {
+    void accept(TrackerItemDto item) throws IOException;
+}
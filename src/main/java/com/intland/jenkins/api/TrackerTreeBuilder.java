@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import com.intland.jenkins.api.dto.TrackerItemDto;
+import com.intland.jenkins.dto.NodeMapping;
+import com.intland.jenkins.dto.TrackerTree;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the id, parent id and name of streamed tracker items in primitive arrays and builds the {@link TrackerTree}
+ * from them, the item DTOs themselves are dropped right after they were parsed.
+ *
+ * Items may arrive in any order and from several threads. They are added to the {@link NodeMapping} in the order of
+ * their ids, items whose parent comes later (e.g. moved items) are added once their parent is known.
+ */
+public class TrackerTreeBuilder implements TrackerItemConsumer {
+    private static final int NO_PARENT = 0;
+
+    private int size;
+    private int[] ids = new int[1024];
+    private int[] parentIds = new int[1024];
+    private String[] names = new String[1024];
+    private Set<Integer> verifiedIds = new HashSet<>();
+
+    @Override
+    public void accept(TrackerItemDto item) {
+        accept(item.getId(), item.getParent() != null ? item.getParent().getId() : null, item.getName());
+
+        if (item.getVerifies() != null && item.getVerifies().length > 0) {
+            addVerifiedId(item.getId());
+        }
+    }
+
+    public synchronized void accept(int id, Integer parentId, String name) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            parentIds = Arrays.copyOf(parentIds, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+
+        ids[size] = id;
+        parentIds[size] = parentId != null ? parentId : NO_PARENT;
+        names[size] = name;
+        size++;
+    }
+
+    public synchronized void addVerifiedId(int id) {
+        verifiedIds.add(id);
+    }
+
+    public synchronized TrackerTree build(Integer trackerId, long syncedAt) {
+        // item id in the high, position in the low 32 bits: sorting orders the positions by id
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        NodeMapping nodeMapping = new NodeMapping();
+        int pending = size;
+        boolean progress = true;
+        while (pending > 0 && progress) {
+            progress = false;
+            int remaining = 0;
+            for (int i = 0; i < pending; i++) {
+                int index = (int) order[i];
+                int parentId = parentIds[index];
+                if (parentId == NO_PARENT || nodeMapping.getNode(parentId) != NodeMapping.NONE) {
+                    nodeMapping.addItem(ids[index], parentId == NO_PARENT ? null : parentId, names[index]);
+                    progress = true;
+                } else {
+                    order[remaining++] = order[i];
+                }
+            }
+            pending = remaining;
+        }
+
+        // parents not in the tracker at all
+        for (int i = 0; i < pending; i++) {
+            int index = (int) order[i];
+            nodeMapping.addItem(ids[index], parentIds[index], names[index]);
+        }
+
+        return new TrackerTree(trackerId, nodeMapping, verifiedIds, syncedAt);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import com.intland.jenkins.dto.NodeMapping;
+import com.intland.jenkins.dto.TrackerTree;
+import hudson.Util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the id/path mapping of trackers on the controller, so a build only has to fetch the items modified since the
+ * previous build instead of the whole tracker. One file per codeBeamer uri and tracker id.
+ *
+ * Entries older than the maxAge system property (ms, prefixed with the name of this class) are ignored, which forces
+ * a complete reload now and then.
+ */
+public class TrackerTreeCache {
+    private static final Logger LOGGER = Logger.getLogger(TrackerTreeCache.class.getName());
+    private static final long MAX_AGE = Long.getLong(TrackerTreeCache.class.getName() + ".maxAge", 24 * 60 * 60 * 1000L); // ms
+    private static final int FORMAT_VERSION = 2;
+    private static final int NO_PARENT = 0;
+    private static final Object LOCK = new Object();
+
+    private final File directory;
+    private final String uri;
+
+    public TrackerTreeCache(File directory, String uri) {
+        this.directory = directory;
+        this.uri = uri;
+    }
+
+    /**
+     * @return the cached tree of the tracker, or null if there is no usable entry
+     */
+    public TrackerTree read(Integer trackerId) {
+        File file = getFile(trackerId);
+        synchronized (LOCK) {
+            if (!file.isFile()) {
+                return null;
+            }
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+                if (in.readInt() != FORMAT_VERSION) {
+                    return null;
+                }
+
+                long syncedAt = in.readLong();
+                if (System.currentTimeMillis() - syncedAt > MAX_AGE) {
+                    return null;
+                }
+
+                TrackerTreeBuilder treeBuilder = new TrackerTreeBuilder();
+                int itemCount = in.readInt();
+                for (int i = 0; i < itemCount; i++) {
+                    int id = in.readInt();
+                    int parentId = in.readInt();
+                    treeBuilder.accept(id, parentId == NO_PARENT ? null : parentId, in.readUTF());
+                }
+
+                int verifiedCount = in.readInt();
+                for (int i = 0; i < verifiedCount; i++) {
+                    treeBuilder.addVerifiedId(in.readInt());
+                }
+
+                return treeBuilder.build(trackerId, syncedAt);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read tracker cache " + file, e);
+                return null;
+            }
+        }
+    }
+
+    public void write(TrackerTree tree) {
+        File file = getFile(tree.getTrackerId());
+        synchronized (LOCK) {
+            try {
+                Files.createDirectories(directory.toPath());
+                File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+                try {
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                        out.writeInt(FORMAT_VERSION);
+                        out.writeLong(tree.getSyncedAt());
+
+                        final DataOutputStream items = out;
+                        final IOException[] failure = new IOException[1];
+                        out.writeInt(tree.getItemCount());
+                        tree.getNodeMapping().visitItems(new NodeMapping.ItemVisitor() {
+                            @Override
+                            public void visit(int id, Integer parentId, String name) {
+                                try {
+                                    items.writeInt(id);
+                                    items.writeInt(parentId == null ? NO_PARENT : parentId);
+                                    items.writeUTF(name);
+                                } catch (IOException e) {
+                                    failure[0] = e;
+                                }
+                            }
+                        });
+                        if (failure[0] != null) {
+                            throw failure[0];
+                        }
+
+                        out.writeInt(tree.getVerifiedIds().size());
+                        for (Integer id : tree.getVerifiedIds()) {
+                            out.writeInt(id);
+                        }
+                    }
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp.toPath());
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write tracker cache " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached tree of the tracker, e.g. because it refers to items deleted since.
+     */
+    public void invalidate(Integer trackerId) {
+        File file = getFile(trackerId);
+        synchronized (LOCK) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete tracker cache " + file, e);
+            }
+        }
+    }
+
+    private File getFile(Integer trackerId) {
+        return new File(directory, String.format("%s-%s.cache", Util.getDigestOf(uri), trackerId));
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+
+/**
+ * Thrown when codeBeamer answered a request with an unexpected status and the request is not retried.
+ */
+public class UnexpectedStatusException extends IOException {
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final int statusCode;
+
+    public UnexpectedStatusException(String method, int statusCode) {
+        super(String.format("%s returned with statusCode: %s", method.toLowerCase(), statusCode));
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true if codeBeamer rejected the content of the request, e.g. because it refers to a deleted item, rather
+     * than the credentials or the load
+     */
+    public boolean isRejectedContent() {
+        return statusCode >= 400 && statusCode < 500
+                && statusCode != HttpStatus.SC_UNAUTHORIZED
+                && statusCode != HttpStatus.SC_FORBIDDEN
+                && statusCode != HttpStatus.SC_REQUEST_TIMEOUT
+                && statusCode != SC_TOO_MANY_REQUESTS;
+    }
+}
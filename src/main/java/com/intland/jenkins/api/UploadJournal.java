@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ *
+ * Additional information can be found here: https://codebeamer.com/cb/project/1025
+ * If you find any bugs please use the Tracker page to report them: https://codebeamer.com/cb/project/1025/tracker
+ */
+package com.intland.jenkins.api;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only record of an upload: the test set, the parent test run and the ranges of test results whose test runs
+ * were created. Every entry is forced to disk before the upload goes on, so an upload interrupted by a crash, a restart
+ * or a codeBeamer outage can be resumed after the last completed batch.
+ *
+ * A batch is recorded with the ids of its test runs as soon as they are created, then when the status of its test runs
+ * was set by a second request (older codeBeamer versions) and when the bugs of its failed tests were reported. Batches
+ * interrupted between these steps are completed when the upload is resumed.
+ *
+ * The journal belongs to one list of test results (identified by a fingerprint), a journal of other or already
+ * finished results is discarded. Without a file the journal only lives in memory.
+ */
+public class UploadJournal implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(UploadJournal.class.getName());
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String TESTS = "tests";
+    private static final String TEST_SET = "testSet";
+    private static final String PARENT_RUN = "parentRun";
+    private static final String BATCH = "batch"; // completed batch, written before the run ids were recorded
+    private static final String RUNS = "runs";
+    private static final String CLOSED = "closed";
+    private static final String REPORTED = "reported";
+    private static final String FINISHED = "finished";
+
+    private final File file;
+    private FileOutputStream out;
+
+    private Integer testSetId;
+    private Integer parentTestRunId;
+    private final BitSet uploaded = new BitSet();
+    // run ids of the batches whose bugs were not reported yet, by the index of their first test result
+    private final Map<Integer, Integer[]> incompleteBatches = new LinkedHashMap<>();
+    private final Set<Integer> closedBatches = new HashSet<>();
+    private int reportedBugCount;
+
+    private UploadJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file        journal file, null for a journal kept in memory only
+     * @param fingerprint identifies the test results of the upload
+     */
+    public static UploadJournal open(File file, String fingerprint) throws IOException {
+        UploadJournal journal = new UploadJournal(file);
+        if (file == null) {
+            return journal;
+        }
+
+        boolean resumable = file.isFile() && journal.read(fingerprint);
+        if (!resumable) {
+            journal.testSetId = null;
+            journal.parentTestRunId = null;
+            journal.uploaded.clear();
+            journal.incompleteBatches.clear();
+            journal.closedBatches.clear();
+            journal.reportedBugCount = 0;
+        }
+
+        journal.out = new FileOutputStream(file, resumable);
+        if (resumable) {
+            journal.append(""); // terminates an entry cut short by a crash
+        } else {
+            journal.append(TESTS + " " + fingerprint);
+        }
+        return journal;
+    }
+
+    public static String fingerprint(List<String> names) {
+        int hash = 1;
+        for (String name : names) {
+            hash = 31 * hash + name.hashCode();
+        }
+        return String.format("%s-%08x", names.size(), hash);
+    }
+
+    public boolean isResumed() {
+        return testSetId != null;
+    }
+
+    public Integer getTestSetId() {
+        return testSetId;
+    }
+
+    public Integer getParentTestRunId() {
+        return parentTestRunId;
+    }
+
+    public synchronized boolean isUploaded(int index) {
+        return uploaded.get(index);
+    }
+
+    public synchronized int getUploadedCount() {
+        return uploaded.cardinality();
+    }
+
+    /**
+     * @return the run ids of the batches whose test runs were created but not completed, by the index of their first
+     * test result
+     */
+    public synchronized Map<Integer, Integer[]> getIncompleteBatches() {
+        return new LinkedHashMap<>(incompleteBatches);
+    }
+
+    /**
+     * @return true if the status of the test runs of the incomplete batch was set
+     */
+    public synchronized boolean isClosed(int fromIndex) {
+        return closedBatches.contains(fromIndex);
+    }
+
+    public synchronized int getReportedBugCount() {
+        return reportedBugCount;
+    }
+
+    public synchronized void testSetCreated(Integer id) throws IOException {
+        testSetId = id;
+        append(TEST_SET + " " + id);
+    }
+
+    public synchronized void parentTestRunCreated(Integer id) throws IOException {
+        parentTestRunId = id;
+        append(PARENT_RUN + " " + id);
+    }
+
+    /**
+     * @param fromIndex index of the first test result of the batch
+     * @param runIds    ids of the created test runs, in the order of the test results
+     */
+    public synchronized void batchCreated(int fromIndex, Integer[] runIds) throws IOException {
+        uploaded.set(fromIndex, fromIndex + runIds.length);
+        incompleteBatches.put(fromIndex, runIds);
+
+        StringBuilder entry = new StringBuilder(RUNS).append(' ').append(fromIndex).append(' ').append(fromIndex + runIds.length);
+        for (Integer runId : runIds) {
+            entry.append(' ').append(runId);
+        }
+        append(entry.toString());
+    }
+
+    /**
+     * The status of the test runs of the batch was set after they were created.
+     */
+    public synchronized void batchClosed(int fromIndex) throws IOException {
+        closedBatches.add(fromIndex);
+        append(CLOSED + " " + fromIndex);
+    }
+
+    /**
+     * The failed tests of the batch were checked, which completes the batch.
+     *
+     * @param bugCount number of bugs reported for the batch
+     */
+    public synchronized void batchReported(int fromIndex, int bugCount) throws IOException {
+        incompleteBatches.remove(fromIndex);
+        closedBatches.remove(fromIndex);
+        reportedBugCount += bugCount;
+        append(REPORTED + " " + fromIndex + " " + bugCount);
+    }
+
+    public synchronized void finished() throws IOException {
+        append(FINISHED);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private boolean read(String fingerprint) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            String line = in.readLine();
+            if (line == null || !line.equals(TESTS + " " + fingerprint)) {
+                return false;
+            }
+
+            while ((line = in.readLine()) != null) {
+                String[] entry = line.split(" ");
+                try {
+                    if (entry[0].equals(TEST_SET) && entry.length == 2) {
+                        testSetId = Integer.valueOf(entry[1]);
+                    } else if (entry[0].equals(PARENT_RUN) && entry.length == 2) {
+                        parentTestRunId = Integer.valueOf(entry[1]);
+                    } else if (entry[0].equals(BATCH) && entry.length == 3) {
+                        uploaded.set(Integer.parseInt(entry[1]), Integer.parseInt(entry[2]));
+                    } else if (entry[0].equals(RUNS) && entry.length > 3) {
+                        readRuns(entry);
+                    } else if (entry[0].equals(CLOSED) && entry.length == 2) {
+                        closedBatches.add(Integer.valueOf(entry[1]));
+                    } else if (entry[0].equals(REPORTED) && entry.length == 3) {
+                        Integer fromIndex = Integer.valueOf(entry[1]);
+                        int bugCount = Integer.parseInt(entry[2]);
+                        incompleteBatches.remove(fromIndex);
+                        closedBatches.remove(fromIndex);
+                        reportedBugCount += bugCount;
+                    } else if (entry[0].equals(FINISHED)) {
+                        return false;
+                    }
+                } catch (NumberFormatException e) {
+                    // last entry cut short by a crash
+                    LOGGER.log(Level.FINE, "Ignoring journal entry: " + line, e);
+                }
+            }
+            return testSetId != null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read upload journal " + file, e);
+            return false;
+        }
+    }
+
+    private void readRuns(String[] entry) {
+        int fromIndex = Integer.parseInt(entry[1]);
+        int toIndex = Integer.parseInt(entry[2]);
+        if (entry.length != 3 + toIndex - fromIndex) {
+            throw new NumberFormatException("Missing run ids");
+        }
+
+        Integer[] runIds = new Integer[toIndex - fromIndex];
+        for (int i = 0; i < runIds.length; i++) {
+            runIds[i] = Integer.valueOf(entry[3 + i]);
+        }
+        incompleteBatches.put(fromIndex, runIds);
+        uploaded.set(fromIndex, toIndex);
+    }
+
+    private void append(String entry) throws IOException {
+        if (out != null) {
+            out.write((entry + "\n").getBytes(UTF8));
+            out.flush();
+            out.getChannel().force(false);
+        }
+    }
+}
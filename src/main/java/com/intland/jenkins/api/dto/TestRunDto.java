@@ -3,7 +3,9 @@
  */
 package com.intland.jenkins.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.intland.jenkins.dto.ErrorDetail;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -11,6 +13,7 @@ import java.util.List;
 
 @JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
 public class TestRunDto {
+    private String uri;
     private String name;
     private String tracker;
     private String result;
@@ -18,12 +21,15 @@ public class TestRunDto {
     private String descFormat;
     private String type;
     private String build;
+    private String status;
+    private Long spentMillis;
     private ReferenceDto submitter;
     private ReferenceDto parent;
     private ReferenceDto testConfiguration;
     private ReferenceDto testSet;
     private ReferenceDto release;
     private List<Object[]>  testCases;
+    private ErrorDetail errorDetail;
 
     public TestRunDto(){}
 
@@ -58,6 +64,14 @@ public class TestRunDto {
         return results;
     }
 
+    public String getUri() {
+        return uri;
+    }
+
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+
     public void setTracker(String tracker) {
         this.tracker = tracker;
     }
@@ -71,9 +85,29 @@ public class TestRunDto {
     }
 
     public String getDescription() {
+        if (description == null && errorDetail != null) {
+            // built for every serialization instead of being kept with the test run
+            return String.format("{{{%s}}}", errorDetail);
+        }
         return description;
     }
 
+    @JsonIgnore
+    public int getDescriptionLength() {
+        if (description == null && errorDetail != null) {
+            return errorDetail.estimateLength() + 6;
+        }
+        return description == null ? 0 : description.length();
+    }
+
+    /**
+     * The description becomes the (wiki escaped) error detail, unless one is set.
+     */
+    @JsonIgnore
+    public void setErrorDetail(ErrorDetail errorDetail) {
+        this.errorDetail = errorDetail;
+    }
+
     public void setDescription(String description) {
         this.description = description;
     }
@@ -102,6 +136,10 @@ public class TestRunDto {
         return result;
     }
 
+    public void setResult(String result) {
+        this.result = result;
+    }
+
     public ReferenceDto getParent() {
         return parent;
     }
@@ -114,6 +152,10 @@ public class TestRunDto {
         return testCases;
     }
 
+    public void setTestCaseIds(Collection<Integer> testCaseIds) {
+        this.testCases = getTestCaseRow(testCaseIds);
+    }
+
     public ReferenceDto getSubmitter() {
         return submitter;
     }
@@ -141,4 +183,20 @@ public class TestRunDto {
     public ReferenceDto getRelease() {
         return release;
     }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Long getSpentMillis() {
+        return spentMillis;
+    }
+
+    public void setSpentMillis(Long spentMillis) {
+        this.spentMillis = spentMillis;
+    }
 }
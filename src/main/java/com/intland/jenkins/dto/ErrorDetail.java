@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+
+package com.intland.jenkins.dto;
+
+/**
+ * Error message and stack trace of a failed test. They are read from their source only when the text is needed, e.g.
+ * while a test run is serialized, so a failed build does not keep a second copy of every stack trace in memory.
+ *
+ * The text is limited to the maxLength system property (characters, prefixed with the name of this class). Longer
+ * texts keep the head of the message, the top frames of the stack trace and the top frames of the root cause, the
+ * number of frames can be set with the topFrames and rootCauseFrames system properties.
+ */
+public abstract class ErrorDetail {
+    private static final String PROPERTY_PREFIX = ErrorDetail.class.getName() + ".";
+    public static final int MAX_LENGTH = Integer.getInteger(PROPERTY_PREFIX + "maxLength", 16 * 1024);
+    public static final int TOP_FRAMES = Integer.getInteger(PROPERTY_PREFIX + "topFrames", 20);
+    public static final int ROOT_CAUSE_FRAMES = Integer.getInteger(PROPERTY_PREFIX + "rootCauseFrames", 10);
+    private static final String CAUSED_BY = "Caused by:";
+    private static final String CUT = "...";
+
+    protected abstract String getMessage();
+
+    /**
+     * @return the stack trace, null if there is none
+     */
+    protected abstract String getStackTrace();
+
+    public static ErrorDetail of(final String message, final String stackTrace) {
+        return new ErrorDetail() {
+            @Override
+            protected String getMessage() {
+                return message;
+            }
+
+            @Override
+            protected String getStackTrace() {
+                return stackTrace;
+            }
+        };
+    }
+
+    /**
+     * @return an upper bound of the length of the text, without building it
+     */
+    public int estimateLength() {
+        String stackTrace = getStackTrace();
+        int length = String.valueOf(getMessage()).length() + (stackTrace == null ? 0 : stackTrace.length() + 1);
+        return Math.min(length, MAX_LENGTH);
+    }
+
+    /**
+     * @return message and stack trace, truncated to {@link #MAX_LENGTH}
+     */
+    @Override
+    public String toString() {
+        String message = String.valueOf(getMessage());
+        String stackTrace = getStackTrace();
+        if (message.length() + (stackTrace == null ? 0 : stackTrace.length() + 1) <= MAX_LENGTH) {
+            return stackTrace == null ? message : message + "\n" + stackTrace;
+        }
+
+        StringBuilder text = new StringBuilder(MAX_LENGTH);
+        appendHead(text, message, stackTrace == null ? MAX_LENGTH : MAX_LENGTH / 4);
+        if (stackTrace != null) {
+            text.append('\n');
+            appendFrames(text, stackTrace);
+        }
+
+        if (text.length() > MAX_LENGTH) {
+            text.setLength(Math.max(0, MAX_LENGTH - CUT.length()));
+            text.append(CUT);
+        }
+        return text.toString();
+    }
+
+    private static void appendHead(StringBuilder text, String value, int maxLength) {
+        if (value.length() <= maxLength) {
+            text.append(value);
+        } else {
+            text.append(value, 0, Math.max(0, maxLength - CUT.length())).append(CUT);
+        }
+    }
+
+    /**
+     * Keeps the exception line with the top frames and the last "Caused by" line with its top frames.
+     */
+    private static void appendFrames(StringBuilder text, String stackTrace) {
+        String[] lines = stackTrace.split("\r?\n");
+        int head = Math.min(lines.length, 1 + TOP_FRAMES);
+        appendLines(text, lines, 0, head);
+
+        int rootCause = -1;
+        for (int i = lines.length - 1; i >= head; i--) {
+            if (lines[i].trim().startsWith(CAUSED_BY)) {
+                rootCause = i;
+                break;
+            }
+        }
+
+        int end = head;
+        if (rootCause >= 0) {
+            appendOmitted(text, rootCause - head);
+            end = Math.min(lines.length, rootCause + 1 + ROOT_CAUSE_FRAMES);
+            appendLines(text, lines, rootCause, end);
+        }
+        appendOmitted(text, lines.length - end);
+    }
+
+    private static void appendLines(StringBuilder text, String[] lines, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (i > 0) {
+                text.append('\n');
+            }
+            text.append(lines[i]);
+        }
+    }
+
+    private static void appendOmitted(StringBuilder text, int count) {
+        if (count > 0) {
+            text.append("\n\t... ").append(count).append(" lines omitted");
+        }
+    }
+}
@@ -4,26 +4,344 @@
 
 package com.intland.jenkins.dto;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Tree of tracker item names, every node is one segment of a dotted path (e.g. com, example, MyTest, testMethod).
+ *
+ * Nodes are addressed by int indexes into parallel arrays, segments are interned, children are found through an open
+ * addressing table keyed by parent node and segment, and item ids are mapped to nodes by a second int table. If several
+ * items share a path the node keeps the lowest id, the other ids still resolve to the node.
+ */
 public class NodeMapping {
-    private Map<Integer, String> idNodeMapping;
-    private Map<String, Integer> nodeIdMapping;
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+    private static final int DETACHED = 1; // parent of items whose parent is unknown, not reachable by path
+    private static final int NO_ID = 0;
+    private static final int DETACHED_PARENT_ID = -1;
+
+    private int size;
+    private int[] parents = new int[16];
+    private String[] segments = new String[16];
+    private int[] ids = new int[16];
+    private int[] firstChildren = new int[16];
+    private int[] nextSiblings = new int[16];
+
+    private int[] childTable = new int[32]; // node index + 1, 0 means empty
+    private int childCount;
+    private IntTable idTable = new IntTable();
+    private Map<String, String> segmentPool = new HashMap<>();
+
+    public NodeMapping() {
+        newNode(NONE, null);
+        newNode(NONE, null);
+    }
+
+    /**
+     * @return the node of the item, or {@link #NONE}
+     */
+    public int getNode(Integer id) {
+        return id == null ? NONE : idTable.get(id);
+    }
+
+    /**
+     * @return the (lowest) item id of the node, null for the root
+     */
+    public Integer getId(int node) {
+        return ids[node] == NO_ID ? null : ids[node];
+    }
+
+    public Integer getId(String path) {
+        int node = ROOT;
+        int start = 0;
+        int length = path.length();
+        while (start <= length && node != NONE) {
+            int end = path.indexOf('.', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                node = findChild(node, path, start, end);
+            }
+            start = end + 1;
+        }
+        return node == NONE || node == ROOT ? null : getId(node);
+    }
+
+    /**
+     * @return dotted path of the item, null if the item or one of its parents is unknown
+     */
+    public String getPath(Integer id) {
+        int node = getNode(id);
+        return node == NONE ? null : getPath(node);
+    }
+
+    public String getPath(int node) {
+        if (node == ROOT) {
+            return "";
+        }
+
+        int length = -1;
+        for (int current = node; current != ROOT; current = parents[current]) {
+            if (current == DETACHED) {
+                return null;
+            }
+            length += segments[current].length() + 1;
+        }
+
+        char[] path = new char[length];
+        int end = length;
+        for (int current = node; current != ROOT; current = parents[current]) {
+            String segment = segments[current];
+            end -= segment.length();
+            segment.getChars(0, segment.length(), path, end);
+            if (end > 0) {
+                path[--end] = '.';
+            }
+        }
+        return new String(path);
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    public String getSegment(int node) {
+        return segments[node];
+    }
+
+    /**
+     * @return the child of the node with the given segment, or {@link #NONE}
+     */
+    public int getChild(int parent, String segment) {
+        return findChild(parent, segment, 0, segment.length());
+    }
+
+    /**
+     * Adds the segment below the parent node if it does not exist yet and maps the id to it.
+     *
+     * @return the node of the segment
+     */
+    public int add(int parent, String segment, Integer id) {
+        int node = getChild(parent, segment);
+        if (node == NONE) {
+            node = newNode(parent, intern(segment));
+            if (parent != DETACHED) {
+                putChild(node);
+            }
+        }
+
+        if (id != null) {
+            if (ids[node] == NO_ID || id < ids[node]) {
+                ids[node] = id;
+            }
+            idTable.put(id, node);
+        }
+        return node;
+    }
+
+    /**
+     * Adds a tracker item below its parent item, items with an unknown parent can only be found by their id.
+     */
+    public int addItem(Integer id, Integer parentId, String name) {
+        int parent = ROOT;
+        if (parentId != null) {
+            parent = getNode(parentId);
+            if (parent == NONE) {
+                parent = DETACHED;
+            }
+        }
+        return add(parent, name, id);
+    }
+
+    public int getItemCount() {
+        return idTable.size();
+    }
+
+    /**
+     * Visits every node with an item id at or below the given path in depth first order, parents before children.
+     */
+    public void visit(String prefix, PathVisitor visitor) {
+        int node = ROOT;
+        if (prefix != null && !prefix.isEmpty()) {
+            Integer id = getId(prefix);
+            node = id == null ? NONE : getNode(id);
+        }
+
+        if (node != NONE) {
+            visit(node, getPath(node), visitor);
+        }
+    }
+
+    private void visit(int node, String path, PathVisitor visitor) {
+        if (ids[node] != NO_ID) {
+            visitor.visit(ids[node], path);
+        }
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            visit(child, path.isEmpty() ? segments[child] : path + "." + segments[child], visitor);
+        }
+    }
+
+    /**
+     * Visits every item id with the id of its parent item (null for top level items) and its name.
+     */
+    public void visitItems(ItemVisitor visitor) {
+        for (int i = 0; i < idTable.keys.length; i++) {
+            int id = idTable.keys[i];
+            if (id != IntTable.EMPTY) {
+                int node = idTable.values[i];
+                int parent = parents[node];
+                Integer parentId = parent == ROOT ? null : parent == DETACHED ? DETACHED_PARENT_ID : ids[parent];
+                visitor.visit(id, parentId, segments[node]);
+            }
+        }
+    }
+
+    private int newNode(int parent, String segment) {
+        if (size == parents.length) {
+            int capacity = size * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            segments = Arrays.copyOf(segments, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        }
 
-    public NodeMapping(Map<Integer, String> idNodeMapping, Map<String, Integer> nodeIdMapping) {
-        this.idNodeMapping = idNodeMapping;
-        this.nodeIdMapping = nodeIdMapping;
+        int node = size++;
+        parents[node] = parent;
+        segments[node] = segment;
+        ids[node] = NO_ID;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        if (parent != NONE) {
+            nextSiblings[node] = firstChildren[parent];
+            firstChildren[parent] = node;
+        }
+        return node;
     }
 
-    public void setNodeIdMapping(Map<String, Integer> nodeIdMapping) {
-        this.nodeIdMapping = nodeIdMapping;
+    private int findChild(int parent, String path, int start, int end) {
+        int mask = childTable.length - 1;
+        for (int slot = hash(parent, path, start, end) & mask; childTable[slot] != 0; slot = (slot + 1) & mask) {
+            int node = childTable[slot] - 1;
+            String segment = segments[node];
+            if (parents[node] == parent && segment.length() == end - start && segment.regionMatches(0, path, start, end - start)) {
+                return node;
+            }
+        }
+        return NONE;
     }
 
-    public Map<Integer, String> getIdNodeMapping() {
-        return idNodeMapping;
+    private void putChild(int node) {
+        if ((childCount + 1) * 2 > childTable.length) {
+            int[] oldTable = childTable;
+            childTable = new int[oldTable.length * 2];
+            for (int entry : oldTable) {
+                if (entry != 0) {
+                    insertChild(entry - 1);
+                }
+            }
+        }
+        insertChild(node);
+        childCount++;
     }
 
-    public Map<String, Integer> getNodeIdMapping() {
-        return nodeIdMapping;
+    private void insertChild(int node) {
+        int mask = childTable.length - 1;
+        String segment = segments[node];
+        int slot = hash(parents[node], segment, 0, segment.length()) & mask;
+        while (childTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        childTable[slot] = node + 1;
+    }
+
+    private static int hash(int parent, String path, int start, int end) {
+        int hash = parent * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private String intern(String segment) {
+        String pooled = segmentPool.get(segment);
+        if (pooled == null) {
+            segmentPool.put(segment, segment);
+            pooled = segment;
+        }
+        return pooled;
+    }
+
+    public interface PathVisitor {
+        void visit(int id, String path);
+    }
+
+    public interface ItemVisitor {
+        void visit(int id, Integer parentId, String name);
+    }
+
+    /**
+     * Open addressing map of positive int keys to int values.
+     */
+    private static class IntTable {
+        static final int EMPTY = 0;
+
+        int[] keys = new int[32];
+        int[] values = new int[32];
+        int size;
+
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return NONE;
+        }
+
+        void put(int key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                int[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new int[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != EMPTY) {
+                        insert(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            if (insert(key, value)) {
+                size++;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private boolean insert(int key, int value) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            return true;
+        }
+
+        private static int mix(int key) {
+            int hash = key * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+
+package com.intland.jenkins.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The included, excluded and truncated packages of a job, serializable so test reports can be filtered on the agent.
+ *
+ * The packages are compiled into a prefix tree once, a test name is checked against all three lists in a single walk
+ * over its characters. Entries starting with "regex:" or "glob:" are patterns which have to match the beginning of the
+ * name, they are checked one by one after the walk. In globs "*" matches within a package, "**" across packages and
+ * "?" a single character.
+ */
+public class PackageFilter implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private static final String REGEX_PREFIX = "regex:";
+    private static final String GLOB_PREFIX = "glob:";
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final String[] includedPackages;
+    private final String[] excludedPackages;
+    private final String[] truncatePackageTree;
+
+    // compiled from the lists above, rebuilt after deserialization
+    private final transient Node root = new Node();
+    private final transient List<PatternRule> patterns = new ArrayList<>();
+    private final transient boolean includeAll;
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if a regex or glob entry is invalid
+     */
+    public PackageFilter(String[] includedPackages, String[] excludedPackages, String[] truncatePackageTree) {
+        this.includedPackages = includedPackages;
+        this.excludedPackages = excludedPackages;
+        this.truncatePackageTree = truncatePackageTree;
+        this.includeAll = includedPackages.length == 0;
+
+        for (int i = 0; i < includedPackages.length; i++) {
+            add(Rule.INCLUDE, includedPackages[i], i);
+        }
+        for (int i = 0; i < excludedPackages.length; i++) {
+            add(Rule.EXCLUDE, excludedPackages[i], i);
+        }
+        for (int i = 0; i < truncatePackageTree.length; i++) {
+            add(Rule.TRUNCATE, truncatePackageTree[i], i);
+        }
+    }
+
+    private Object readResolve() {
+        return new PackageFilter(includedPackages, excludedPackages, truncatePackageTree);
+    }
+
+    public boolean isAllowed(String name) {
+        return apply(name) != null;
+    }
+
+    /**
+     * @return the name without the first matching truncated package and the separator after it, null if the name is
+     * not included or excluded
+     */
+    public String apply(String name) {
+        boolean included = includeAll;
+        boolean excluded = false;
+        int truncateOrder = NO_MATCH;
+        int truncateLength = 0;
+
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            if (node.excluded) {
+                return null;
+            }
+            included |= node.included;
+            if (node.truncateOrder < truncateOrder) {
+                truncateOrder = node.truncateOrder;
+                truncateLength = depth;
+            }
+
+            node = depth < name.length() ? node.child(name.charAt(depth)) : null;
+            depth++;
+        }
+
+        for (PatternRule pattern : patterns) {
+            if ((pattern.rule == Rule.INCLUDE && included) || (pattern.rule == Rule.TRUNCATE && pattern.order > truncateOrder)) {
+                continue;
+            }
+
+            Matcher matcher = pattern.pattern.matcher(name);
+            if (!matcher.lookingAt()) {
+                continue;
+            }
+
+            if (pattern.rule == Rule.INCLUDE) {
+                included = true;
+            } else if (pattern.rule == Rule.EXCLUDE) {
+                excluded = true;
+                break;
+            } else {
+                truncateOrder = pattern.order;
+                truncateLength = matcher.end();
+            }
+        }
+
+        if (!included || excluded) {
+            return null;
+        }
+        return truncateOrder == NO_MATCH ? name : name.substring(Math.min(name.length(), truncateLength + 1));
+    }
+
+    private void add(Rule rule, String entry, int order) {
+        String value = entry.trim();
+        if (value.startsWith(REGEX_PREFIX)) {
+            patterns.add(new PatternRule(rule, order, Pattern.compile(value.substring(REGEX_PREFIX.length()))));
+        } else if (value.startsWith(GLOB_PREFIX)) {
+            patterns.add(new PatternRule(rule, order, Pattern.compile(globToRegex(value.substring(GLOB_PREFIX.length())))));
+        } else {
+            Node node = root;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.getOrAddChild(value.charAt(i));
+            }
+            node.mark(rule, order);
+        }
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else if (c == '?') {
+                regex.append("[^.]");
+            } else if (Character.isLetterOrDigit(c)) {
+                regex.append(c);
+            } else {
+                regex.append('\\').append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    private enum Rule {
+        INCLUDE, EXCLUDE, TRUNCATE
+    }
+
+    private static class PatternRule {
+        private final Rule rule;
+        private final int order;
+        private final Pattern pattern;
+
+        PatternRule(Rule rule, int order, Pattern pattern) {
+            this.rule = rule;
+            this.order = order;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * Node of the prefix tree, the children are kept in arrays sorted by their character.
+     */
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean included;
+        private boolean excluded;
+        private int truncateOrder = NO_MATCH; // position of the first truncated package ending here
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            index = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            newKeys[index] = c;
+            newChildren[index] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[index];
+        }
+
+        void mark(Rule rule, int order) {
+            if (rule == Rule.INCLUDE) {
+                included = true;
+            } else if (rule == Rule.EXCLUDE) {
+                excluded = true;
+            } else {
+                truncateOrder = Math.min(truncateOrder, order);
+            }
+        }
+    }
+}
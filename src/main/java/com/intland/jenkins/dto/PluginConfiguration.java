@@ -6,7 +6,13 @@ package com.intland.jenkins.dto;
 
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 
+import java.io.File;
+
 public class PluginConfiguration {
+    public static final int DEFAULT_MIN_BATCH_SIZE = 10;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 200;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 2 * 1024 * 1024;
+
     private String uri;
     private StandardUsernamePasswordCredentials credentials;
     private Integer testSetTrackerId;
@@ -24,6 +30,17 @@ public class PluginConfiguration {
     private String[] includedPackages;
     private String[] excludedPackages;
     private String[] truncatePackageTree;
+    private PackageFilter packageFilter;
+    private int uploadConcurrency = 1;
+    private int minBatchSize = DEFAULT_MIN_BATCH_SIZE;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private File cacheDirectory;
+    private File journalFile;
+    private File testCaseMappingFile;
+    private double requestsPerSecond;
+    private int maxConcurrentRequests;
+    private int compressionThreshold;
 
     public PluginConfiguration() {
     }
@@ -99,6 +116,7 @@ public class PluginConfiguration {
 
     public void setIncludedPackages(String[] includedPackages) {
         this.includedPackages = includedPackages;
+        this.packageFilter = null;
     }
 
     public String[] getExcludedPackages() {
@@ -107,6 +125,7 @@ public class PluginConfiguration {
 
     public void setExcludedPackages(String[] excludedPackages) {
         this.excludedPackages = excludedPackages;
+        this.packageFilter = null;
     }
 
     public String[] getTruncatePackageTree() {
@@ -115,6 +134,17 @@ public class PluginConfiguration {
 
     public void setTruncatePackageTree(String[] truncatePackageTree) {
         this.truncatePackageTree = truncatePackageTree;
+        this.packageFilter = null;
+    }
+
+    /**
+     * @return the package lists compiled into a filter, built once and reused for every test of the run
+     */
+    public PackageFilter getPackageFilter() {
+        if (packageFilter == null) {
+            packageFilter = new PackageFilter(includedPackages, excludedPackages, truncatePackageTree);
+        }
+        return packageFilter;
     }
 
     public Integer getRequirementDepth() {
@@ -172,4 +202,90 @@ public class PluginConfiguration {
     public void setBuild(String build) {
         this.build = build;
     }
+
+    public int getUploadConcurrency() {
+        return uploadConcurrency;
+    }
+
+    public void setUploadConcurrency(int uploadConcurrency) {
+        this.uploadConcurrency = uploadConcurrency;
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    public void setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = minBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * @return directory of the persistent tracker caches, null if caching is disabled
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    public void setJournalFile(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    public File getTestCaseMappingFile() {
+        return testCaseMappingFile;
+    }
+
+    public void setTestCaseMappingFile(File testCaseMappingFile) {
+        this.testCaseMappingFile = testCaseMappingFile;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return request bodies of at least this many bytes are sent gzipped, 0 to never compress
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
 }
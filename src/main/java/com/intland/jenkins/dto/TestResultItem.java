@@ -7,15 +7,13 @@ package com.intland.jenkins.dto;
 public class TestResultItem {
     //public enum RESULT {SUCCESS, FALIURE, SKIPPED}
     private String fullName;
-    private String name;
     private float duration;
     private boolean successful;
     private String result;
-    private String errorDetail;
+    private ErrorDetail errorDetail;
 
     public TestResultItem(String fullName, float duration, boolean successful, String result) {
         this.fullName = fullName;
-        this.name = fullName.substring(fullName.lastIndexOf(".") + 1);
         this.duration = duration;
         this.successful = successful;
         this.result = result;
@@ -26,7 +24,7 @@ public class TestResultItem {
     }
 
     public String getName() {
-        return name;
+        return fullName.substring(fullName.lastIndexOf(".") + 1);
     }
 
     public float getDuration() {
@@ -41,11 +39,14 @@ public class TestResultItem {
         return result;
     }
 
-    public void setErrorDetail(String errorDetail) {
+    public void setErrorDetail(ErrorDetail errorDetail) {
         this.errorDetail = errorDetail;
     }
 
-    public String getErrorDetail() {
+    /**
+     * @return the (lazily read) error of a failed test, null if the test passed
+     */
+    public ErrorDetail getErrorDetail() {
         return errorDetail;
     }
 }
@@ -4,21 +4,38 @@
 
 package com.intland.jenkins.dto;
 
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
-public class TestResults {
-    private List<TestResultItem> testResultItems;
-    private TestSummary testSummary;
-    private String status;
+/**
+ * The items are iterated instead of being kept in a list, the source may create them on the fly for every iteration.
+ * The summary is known up front.
+ *
+ * Serializable, so the test reports can be parsed on the agent. The items are written as compact records (name,
+ * duration, status and error detail), the result strings of the items are not repeated.
+ */
+public class TestResults implements Iterable<TestResultItem>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int NO_VALUE = -1;
+    private static final int FORMAT_VERSION = 1;
+
+    private transient Iterable<TestResultItem> testResultItems;
+    private transient TestSummary testSummary;
+    private transient String status;
 
-    public TestResults(List<TestResultItem> testResultItems, TestSummary testSummary, String status) {
+    public TestResults(Iterable<TestResultItem> testResultItems, TestSummary testSummary, String status) {
         this.testResultItems = testResultItems;
         this.testSummary = testSummary;
         this.status = status;
     }
 
-    public List<TestResultItem> getTestResultItems() {
-        return testResultItems;
+    @Override
+    public Iterator<TestResultItem> iterator() {
+        return testResultItems.iterator();
     }
 
     public TestSummary getTestSummary() {
@@ -28,4 +45,85 @@ public class TestResults {
     public String getStatus() {
         return status;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // keeps fields added later, the records below are written by hand
+        out.defaultWriteObject();
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, status);
+        out.writeInt(testSummary.getTestCount());
+        out.writeInt(testSummary.getSuccessCount());
+        out.writeInt(testSummary.getFailCount());
+
+        // passed and failed items share the same two result strings
+        List<String> results = new ArrayList<>();
+        for (TestResultItem item : testResultItems) {
+            out.writeBoolean(true);
+            int result = results.indexOf(item.getResult());
+            if (result < 0) {
+                result = results.size();
+                results.add(item.getResult());
+                out.writeInt(result);
+                writeString(out, item.getResult());
+            } else {
+                out.writeInt(result);
+            }
+
+            writeString(out, item.getFullName());
+            out.writeFloat(item.getDuration());
+            out.writeBoolean(item.isSuccessful());
+            // only the truncated text is sent, the stack traces stay where the reports were parsed
+            writeString(out, item.getErrorDetail() == null ? null : item.getErrorDetail().toString());
+        }
+        out.writeBoolean(false);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int formatVersion = in.readByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new InvalidObjectException("Unsupported test results format " + formatVersion);
+        }
+        status = readString(in);
+        testSummary = new TestSummary(in.readInt(), in.readInt(), in.readInt());
+
+        List<String> results = new ArrayList<>();
+        List<TestResultItem> items = new ArrayList<>(testSummary.getTestCount());
+        while (in.readBoolean()) {
+            int result = in.readInt();
+            if (result == results.size()) {
+                results.add(readString(in));
+            }
+
+            TestResultItem item = new TestResultItem(readString(in), in.readFloat(), in.readBoolean(), results.get(result));
+            String errorDetail = readString(in);
+            if (errorDetail != null) {
+                item.setErrorDetail(ErrorDetail.of(errorDetail, null));
+            }
+            items.add(item);
+        }
+        testResultItems = items;
+    }
+
+    // writeUTF is limited to 64 KB, error details can be longer
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NO_VALUE);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == NO_VALUE) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
 }
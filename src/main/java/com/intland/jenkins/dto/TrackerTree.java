@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+
+package com.intland.jenkins.dto;
+
+import java.util.Set;
+
+public class TrackerTree {
+    private Integer trackerId;
+    private NodeMapping nodeMapping;
+    private Set<Integer> verifiedIds;
+    private long syncedAt;
+
+    public TrackerTree(Integer trackerId, NodeMapping nodeMapping, Set<Integer> verifiedIds, long syncedAt) {
+        this.trackerId = trackerId;
+        this.nodeMapping = nodeMapping;
+        this.verifiedIds = verifiedIds;
+        this.syncedAt = syncedAt;
+    }
+
+    public Integer getTrackerId() {
+        return trackerId;
+    }
+
+    public NodeMapping getNodeMapping() {
+        return nodeMapping;
+    }
+
+    /**
+     * @return ids of the items verifying at least one other item (e.g. Test Cases verifying a Requirement)
+     */
+    public Set<Integer> getVerifiedIds() {
+        return verifiedIds;
+    }
+
+    public long getSyncedAt() {
+        return syncedAt;
+    }
+
+    public void setSyncedAt(long syncedAt) {
+        this.syncedAt = syncedAt;
+    }
+
+    public int getItemCount() {
+        return nodeMapping.getItemCount();
+    }
+}
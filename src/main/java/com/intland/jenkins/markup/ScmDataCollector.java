@@ -3,7 +3,6 @@
  */
 package com.intland.jenkins.markup;
 
-import com.intland.jenkins.api.CodebeamerApiClient;
 import hudson.model.AbstractBuild;
 import hudson.model.Run;
 import hudson.plugins.git.Branch;
@@ -16,7 +15,6 @@ import hudson.scm.SubversionSCM;
 import hudson.scm.SubversionSCM.ModuleLocation;
 import hudson.scm.SubversionTagAction;
 
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
@@ -26,15 +24,20 @@ import java.util.regex.Pattern;
 public class ScmDataCollector {
     private static final Pattern scmTaskIdPattern = Pattern.compile("(#([1-9][0-9]{3,9})((,|\\s+)[1-9][0-9]{3,9})*)(?:\\z|[\\s.,;:)/\\-]+)");
 
-    public static ScmDto collectScmData(Run<?, ?> build, CodebeamerApiClient apiClient) throws IOException {
+    /**
+     * Only reads the build, the codeBeamer link of the repository is left as {@link ScmRepository#PLACEHOLDER}.
+     */
+    public static ScmDto collectScmData(Run<?, ?> build) {
         String repositoryLine = "Unsupported SCM";
         String changes = "";
+        ScmRepository repository = null;
 
         if (PluginUtil.isGitPluginInstalled() && build.getAction(BuildData.class) != null) {
             BuildData gitScm = build.getAction(BuildData.class);
             String repoUrl = (String)(gitScm.getRemoteUrls()).toArray()[0];
 
-            String cbRepoUrl = apiClient.getCodeBeamerRepoUrlForGit(repoUrl);
+            repository = new ScmRepository(ScmRepository.GIT, repoUrl);
+            String cbRepoUrl = ScmRepository.PLACEHOLDER;
 
             Revision revision = gitScm.getLastBuiltRevision();
             if (revision != null) { //revision can be null for first shallow clone
@@ -55,8 +58,8 @@ public class ScmDataCollector {
             ModuleLocation[] locs = scm.getLocations();
             String remote = locs[0].remote;
 
-            String cbRepoUrl = apiClient.getCodeBeamerRepoUrlForSVN(remote);
-            repositoryLine = String.format("%s", cbRepoUrl);
+            repository = new ScmRepository(ScmRepository.SVN, remote);
+            repositoryLine = ScmRepository.PLACEHOLDER;
         }
 
         // This is only called when there has been a commit since the last run
@@ -83,7 +86,7 @@ public class ScmDataCollector {
                 changes += String.format("* %s %s\n", commitMessageWithTaskLink, formattedUser);
             }
         }
-        return new ScmDto(repositoryLine, changes);
+        return new ScmDto(repositoryLine, changes, repository);
     }
 
     private static String getAuthorString(ChangeLogSet.Entry entry) {
@@ -6,10 +6,16 @@ package com.intland.jenkins.markup;
 public class ScmDto {
     private String repositoryLine;
     private String changes;
+    private ScmRepository repository;
 
     public ScmDto(String repositoryLine, String changes) {
+        this(repositoryLine, changes, null);
+    }
+
+    public ScmDto(String repositoryLine, String changes, ScmRepository repository) {
         this.repositoryLine = repositoryLine;
         this.changes = changes;
+        this.repository = repository;
     }
 
     public String getRepositoryLine() {
@@ -19,4 +25,12 @@ public class ScmDto {
     public String getChanges() {
         return changes;
     }
+
+    /**
+     * @return the repository whose codeBeamer link replaces {@link ScmRepository#PLACEHOLDER} in the repository line,
+     * null if there is none
+     */
+    public ScmRepository getRepository() {
+        return repository;
+    }
 }
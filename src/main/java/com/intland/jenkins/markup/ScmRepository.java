@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.markup;
+
+import java.io.Serializable;
+
+/**
+ * The repository a build was checked out from. Its codeBeamer link is looked up when the test runs are uploaded, until
+ * then the repository line of the markup holds {@link #PLACEHOLDER}.
+ */
+public class ScmRepository implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String PLACEHOLDER = "$codeBeamerRepository$";
+    public static final String GIT = "git";
+    public static final String SVN = "svn";
+
+    private final String type;
+    private final String remote;
+
+    public ScmRepository(String type, String remote) {
+        this.type = type;
+        this.remote = remote;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getRemote() {
+        return remote;
+    }
+}
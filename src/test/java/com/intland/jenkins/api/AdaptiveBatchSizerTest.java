@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.api;
+
+import com.intland.jenkins.api.dto.TestRunDto;
+import com.intland.jenkins.dto.ErrorDetail;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveBatchSizerTest {
+
+    @Test
+    public void startsWithTheInitialSizeWithinTheLimits() {
+        assertEquals(20, new AdaptiveBatchSizer(1, 500, Long.MAX_VALUE).getBatchSize());
+        assertEquals(50, new AdaptiveBatchSizer(50, 500, Long.MAX_VALUE).getBatchSize());
+        assertEquals(10, new AdaptiveBatchSizer(1, 10, Long.MAX_VALUE).getBatchSize());
+        assertEquals(5, new AdaptiveBatchSizer(5, 1, Long.MAX_VALUE).getBatchSize());
+    }
+
+    @Test
+    public void doublesWhileTheTimePerTestRunDrops() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 500, Long.MAX_VALUE);
+
+        sizer.recordBatch(20, 200); // 10 ms per test run, the first batch always grows
+        assertEquals(40, sizer.getBatchSize());
+        sizer.recordBatch(40, 380); // 9.5 ms, an improvement of exactly 5% is not enough
+        assertEquals(40, sizer.getBatchSize());
+        sizer.recordBatch(40, 360); // 9 ms
+        assertEquals(80, sizer.getBatchSize());
+    }
+
+    @Test
+    public void shrinksWhenTheTimePerTestRunRises() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 500, Long.MAX_VALUE);
+        sizer.recordBatch(20, 200);
+
+        sizer.recordBatch(40, 480); // 12 ms, a degradation of exactly 20% is tolerated
+        assertEquals(40, sizer.getBatchSize());
+        sizer.recordBatch(40, 600); // 15 ms
+        assertEquals(30, sizer.getBatchSize());
+        sizer.recordBatch(30, 450); // 15 ms, unchanged
+        assertEquals(30, sizer.getBatchSize());
+    }
+
+    @Test
+    public void staysWithinMinAndMax() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(16, 100, Long.MAX_VALUE);
+        long millis = 1000000;
+        for (int i = 0; i < 10; i++) {
+            millis /= 2;
+            sizer.recordBatch(sizer.getBatchSize(), millis);
+        }
+        assertEquals(100, sizer.getBatchSize());
+
+        double millisPerItem = 1;
+        for (int i = 0; i < 20; i++) {
+            millisPerItem *= 2;
+            sizer.recordBatch(sizer.getBatchSize(), (long) (millisPerItem * sizer.getBatchSize()));
+        }
+        assertEquals(16, sizer.getBatchSize());
+    }
+
+    @Test
+    public void ignoresEmptyBatches() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 500, Long.MAX_VALUE);
+        sizer.recordBatch(0, 100);
+
+        assertEquals(20, sizer.getBatchSize());
+    }
+
+    @Test
+    public void shrinksToTheTestRunsFittingTheByteBudget() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(4, 500, 10000);
+
+        assertTrue(sizer.fits(9000, 1000));
+        assertFalse(sizer.fits(9001, 1000));
+
+        sizer.payloadLimitReached(25);
+        assertEquals(20, sizer.getBatchSize());
+        sizer.payloadLimitReached(12);
+        assertEquals(12, sizer.getBatchSize());
+        sizer.payloadLimitReached(2);
+        assertEquals(4, sizer.getBatchSize());
+    }
+
+    @Test
+    public void estimatesTheNameAndDescription() {
+        TestRunDto passed = new TestRunDto("com.a.T.passed", 1, 2, Arrays.asList(3), 4, "PASSED");
+        TestRunDto described = new TestRunDto("com.a.T.described", 1, 2, Arrays.asList(3), 4, "PASSED");
+        described.setDescription("--");
+        TestRunDto failed = new TestRunDto("com.a.T.failed", 1, 2, Arrays.asList(3), 4, "FAILED");
+        failed.setErrorDetail(ErrorDetail.of("expected:<1> but was:<0>", null));
+
+        long passedSize = AdaptiveBatchSizer.estimateSize(passed);
+        assertEquals(passedSize + "described".length() - "passed".length() + 2, AdaptiveBatchSizer.estimateSize(described));
+        assertTrue(AdaptiveBatchSizer.estimateSize(failed) >= passedSize + "expected:<1> but was:<0>".length());
+        assertEquals(passedSize + AdaptiveBatchSizer.estimateSize(described) + AdaptiveBatchSizer.estimateSize(failed),
+                AdaptiveBatchSizer.estimateSize(Arrays.asList(passed, described, failed)));
+    }
+}
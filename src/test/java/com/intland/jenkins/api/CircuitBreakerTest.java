@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    private final TestCircuitBreaker breaker = new TestCircuitBreaker();
+
+    @Test
+    public void allowsRequestsWhileClosed() {
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void opensAfterTheFailureThreshold() {
+        recordFailures(CircuitBreaker.FAILURE_THRESHOLD - 1);
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+
+        recordFailures(1);
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+        assertEquals(breaker.time + CircuitBreaker.OPEN_DURATION, breaker.getRetryAt());
+    }
+
+    @Test
+    public void resetsTheFailuresOnSuccess() {
+        recordFailures(CircuitBreaker.FAILURE_THRESHOLD - 1);
+        breaker.recordSuccess();
+        recordFailures(CircuitBreaker.FAILURE_THRESHOLD - 1);
+
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void countsARetriedRequestAsOneFailure() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            for (int attempt = 0; attempt < CircuitBreaker.FAILURE_THRESHOLD; attempt++) {
+                assertTrue(breaker.allowRequest());
+                breaker.recordRetry();
+            }
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        assertFalse(breaker.isOpen());
+
+        recordFailures(1);
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void reopensWhenTheRetriedProbeFails() {
+        recordFailures(CircuitBreaker.FAILURE_THRESHOLD);
+        breaker.time += CircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordRetry();
+        assertTrue(breaker.isOpen());
+        assertEquals(breaker.time + CircuitBreaker.OPEN_DURATION, breaker.getRetryAt());
+    }
+
+    @Test
+    public void letsASingleProbeThroughAfterTheOpenDuration() {
+        recordFailures(CircuitBreaker.FAILURE_THRESHOLD);
+        breaker.time += CircuitBreaker.OPEN_DURATION;
+        assertFalse(breaker.isOpen());
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.isOpen());
+        assertEquals(breaker.time + CircuitBreaker.PROBE_BACKOFF, breaker.getRetryAt());
+    }
+
+    @Test
+    public void reopensWhenTheProbeFails() {
+        recordFailures(CircuitBreaker.FAILURE_THRESHOLD);
+        breaker.time += CircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+        assertEquals(breaker.time + CircuitBreaker.OPEN_DURATION, breaker.getRetryAt());
+    }
+
+    @Test
+    public void closesWhenTheProbeSucceeds() {
+        recordFailures(CircuitBreaker.FAILURE_THRESHOLD);
+        breaker.time += CircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void countsOnlyUnavailableServersAsFailures() {
+        assertTrue(CircuitBreaker.isFailure(502));
+        assertTrue(CircuitBreaker.isFailure(503));
+        assertTrue(CircuitBreaker.isFailure(504));
+        assertFalse(CircuitBreaker.isFailure(500));
+        assertFalse(CircuitBreaker.isFailure(404));
+    }
+
+    @Test
+    public void sharesTheBreakerOfAServer() {
+        CircuitBreaker breaker = CircuitBreaker.get("https://codebeamer.example.com/cb");
+
+        assertSame(breaker, CircuitBreaker.get("https://codebeamer.example.com/cb"));
+        assertNotSame(breaker, CircuitBreaker.get("https://other.example.com/cb"));
+    }
+
+    private void recordFailures(int count) {
+        for (int i = 0; i < count; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+    }
+
+    private static class TestCircuitBreaker extends CircuitBreaker {
+        private long time = 1000000L;
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class JsonEntityTest {
+    private static final ObjectWriter WRITER = new ObjectMapper().writer();
+
+    @Test
+    public void gzipsBodiesFromTheCompressionThreshold() throws IOException {
+        List<String> value = createValue(100);
+        int length = WRITER.writeValueAsBytes(value).length;
+
+        JsonEntity below = new JsonEntity(WRITER, value, length + 1);
+        assertNull(below.getContentEncoding());
+        assertEquals(WRITER.writeValueAsString(value), new String(getBytes(below), "UTF-8"));
+
+        JsonEntity atThreshold = new JsonEntity(WRITER, value, length);
+        assertEquals("gzip", atThreshold.getContentEncoding().getValue());
+        assertEquals(WRITER.writeValueAsString(value), gunzip(getBytes(atThreshold)));
+    }
+
+    @Test
+    public void neverGzipsWithoutThreshold() throws IOException {
+        JsonEntity entity = new JsonEntity(WRITER, createValue(10000), 0);
+
+        assertNull(entity.getContentEncoding());
+    }
+
+    @Test
+    public void sendsSmallBodiesWithAContentLength() throws IOException {
+        List<String> value = createValue(100);
+        JsonEntity entity = new JsonEntity(WRITER, value, 0);
+
+        assertFalse(entity.isChunked());
+        assertEquals(WRITER.writeValueAsBytes(value).length, entity.getContentLength());
+        assertEquals(WRITER.writeValueAsString(value), IOUtils.toString(entity.getContent(), "UTF-8"));
+    }
+
+    @Test
+    public void sendsCompressedSmallBodiesWithTheirCompressedLength() throws IOException {
+        JsonEntity entity = new JsonEntity(WRITER, createValue(100), 1);
+
+        assertFalse(entity.isChunked());
+        assertEquals(getBytes(entity).length, entity.getContentLength());
+    }
+
+    @Test
+    public void streamsLargeBodiesChunked() throws IOException {
+        List<String> value = createValue(50000);
+        JsonEntity entity = new JsonEntity(WRITER, value, 0);
+
+        assertTrue(WRITER.writeValueAsBytes(value).length > 1024 * 1024);
+        assertTrue(entity.isChunked());
+        assertEquals(-1, entity.getContentLength());
+        assertEquals(WRITER.writeValueAsString(value), new String(getBytes(entity), "UTF-8"));
+    }
+
+    @Test
+    public void streamsBodiesEstimatedToBeLarge() throws IOException {
+        List<String> value = createValue(100);
+        JsonEntity entity = new JsonEntity(WRITER, value, 1, 10 * 1024 * 1024);
+
+        assertTrue(entity.isChunked());
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        assertEquals(WRITER.writeValueAsString(value), gunzip(getBytes(entity)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void keepsNoCopyOfAStreamedBody() throws IOException {
+        new JsonEntity(WRITER, createValue(50000), 0).getContent();
+    }
+
+    @Test
+    public void writesTheSameBytesForEveryAttempt() throws IOException {
+        List<String> value = createValue(50000);
+        for (JsonEntity entity : new JsonEntity[]{new JsonEntity(WRITER, value, 0), new JsonEntity(WRITER, value, 1),
+                new JsonEntity(WRITER, createValue(100), 1)}) {
+            assertTrue(entity.isRepeatable());
+            byte[] first = getBytes(entity);
+            assertArrayEquals(first, getBytes(entity));
+        }
+    }
+
+    @Test
+    public void capsThePreview() throws IOException {
+        String preview = new JsonEntity(WRITER, createValue(50000), 0).toString();
+        assertTrue(preview.length() < 5000);
+        assertTrue(preview.startsWith("[\"com.example.package0.Test0\""));
+        assertTrue(preview.endsWith("..."));
+
+        String compressedPreview = new JsonEntity(WRITER, createValue(100), 1).toString();
+        assertTrue(compressedPreview.startsWith("[\"com.example.package0.Test0\""));
+
+        assertEquals("[\"com.example.package0.Test0\"]", new JsonEntity(WRITER, createValue(1), 0).toString());
+    }
+
+    private static List<String> createValue(int count) {
+        List<String> value = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            value.add("com.example.package" + (i % 10) + ".Test" + i);
+        }
+        return value;
+    }
+
+    private static byte[] getBytes(JsonEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return IOUtils.toString(in, "UTF-8");
+        }
+    }
+}
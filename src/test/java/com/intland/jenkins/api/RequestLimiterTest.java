@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.api;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestLimiterTest {
+    private static final long TIMEOUT = 5000; // ms
+
+    private final RequestLimiter limiter = new RequestLimiter();
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void keepsTheRequestsInFlightWithinTheLimit() throws InterruptedException {
+        limiter.configure(0, 3);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            start(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int request = 0; request < 10; request++) {
+                            limiter.acquire();
+                            try {
+                                int current = inFlight.incrementAndGet();
+                                updateMax(maxInFlight, current);
+                                Thread.sleep(1);
+                                inFlight.decrementAndGet();
+                            } finally {
+                                limiter.release();
+                            }
+                        }
+                        completed.incrementAndGet();
+                    } catch (InterruptedIOException | InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        joinAll();
+
+        assertEquals(20, completed.get());
+        assertTrue("max in flight: " + maxInFlight.get(), maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void freesThePermitOfAFailedRequest() throws IOException {
+        limiter.configure(0, 1);
+        limiter.acquire();
+        try {
+            sendFailingRequest();
+            fail();
+        } catch (IOException e) {
+            // the way RestAdapter releases the permit of a request
+        } finally {
+            limiter.release();
+        }
+
+        assertAcquiredWithin(TIMEOUT);
+    }
+
+    @Test
+    public void freesThePermitWhenInterruptedWhileWaitingForAToken() throws Exception {
+        limiter.configure(0.01, 1);
+        final Throwable[] failure = new Throwable[1];
+        Thread waiting = start(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                    limiter.release();
+                } catch (InterruptedIOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        Thread.sleep(100);
+        waiting.interrupt();
+        waiting.join(TIMEOUT);
+
+        assertTrue(failure[0] instanceof InterruptedIOException);
+        limiter.configure(0, 1);
+        assertAcquiredWithin(TIMEOUT);
+    }
+
+    @Test
+    public void letsWaitingRequestsThroughWhenTheLimitIsRaised() throws Exception {
+        limiter.configure(0, 1);
+        limiter.acquire();
+        final AtomicInteger acquired = new AtomicInteger();
+        Thread waiting = start(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.incrementAndGet();
+                    limiter.release();
+                } catch (InterruptedIOException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread.sleep(100);
+        assertEquals(0, acquired.get());
+
+        limiter.configure(0, 2);
+        waiting.join(TIMEOUT);
+        assertEquals(1, acquired.get());
+        limiter.release();
+    }
+
+    @Test
+    public void appliesANewRateToWaitingRequests() throws Exception {
+        limiter.configure(0.01, 0);
+        final AtomicInteger acquired = new AtomicInteger();
+        Thread waiting = start(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.incrementAndGet();
+                    limiter.release();
+                } catch (InterruptedIOException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread.sleep(100);
+        assertEquals(0, acquired.get());
+
+        limiter.configure(0, 0);
+        waiting.join(TIMEOUT);
+        assertEquals(1, acquired.get());
+    }
+
+    @Test
+    public void limitsTheRequestsPerSecond() throws InterruptedIOException {
+        limiter.configure(20, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        // the bucket starts empty, a token is added every 50 ms
+        assertTrue("took " + millis + " ms", millis >= 400);
+    }
+
+    @Test
+    public void sharesTheLimiterOfAServer() {
+        RequestLimiter limiter = RequestLimiter.get("https://codebeamer.example.com/cb", 0, 1);
+
+        assertSame(limiter, RequestLimiter.get("https://codebeamer.example.com/cb", 0, 2));
+        assertNotSame(limiter, RequestLimiter.get("https://other.example.com/cb", 0, 1));
+    }
+
+    private static void sendFailingRequest() throws IOException {
+        throw new IOException("Connection reset");
+    }
+
+    private void assertAcquiredWithin(long timeout) throws InterruptedIOException {
+        long start = System.currentTimeMillis();
+        limiter.acquire();
+        limiter.release();
+        assertTrue(System.currentTimeMillis() - start < timeout);
+    }
+
+    private Thread start(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    private void joinAll() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT);
+        }
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // another thread raised it in between
+        }
+    }
+}
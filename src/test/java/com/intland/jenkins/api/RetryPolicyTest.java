@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.api;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import javax.net.ssl.SSLException;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+    private final RetryPolicy retryPolicy = new RetryPolicy(5, 100, 1000, 5000);
+
+    @Test
+    public void keepsTheDelayWithinTheBackoffOfTheAttempt() {
+        for (int i = 0; i < 1000; i++) {
+            assertBetween(50, 100, retryPolicy.getDelay(1, -1));
+            assertBetween(200, 400, retryPolicy.getDelay(3, -1));
+            assertBetween(500, 1000, retryPolicy.getDelay(10, -1));
+            assertBetween(500, 1000, retryPolicy.getDelay(100, -1));
+        }
+    }
+
+    @Test
+    public void waitsAtLeastForRetryAfterUpToItsCap() {
+        assertEquals(3000, retryPolicy.getDelay(1, 3000));
+        assertEquals(5000, retryPolicy.getDelay(1, 60000));
+        assertBetween(500, 1000, retryPolicy.getDelay(10, 10));
+    }
+
+    @Test
+    public void readsRetryAfterSecondsAndDates() {
+        assertEquals(-1, RetryPolicy.getRetryAfter(response(null)));
+        assertEquals(7000, RetryPolicy.getRetryAfter(response(" 7 ")));
+        assertEquals(-1, RetryPolicy.getRetryAfter(response("soon")));
+        assertEquals(0, RetryPolicy.getRetryAfter(response(DateUtils.formatDate(new Date(System.currentTimeMillis() - 60000)))));
+
+        long retryAfter = RetryPolicy.getRetryAfter(response(DateUtils.formatDate(new Date(System.currentTimeMillis() + 60000))));
+        assertBetween(58000, 60000, retryAfter);
+    }
+
+    @Test
+    public void retriesRejectedRequestsForEveryVerb() {
+        assertTrue(retryPolicy.shouldRetry(1, 429, false));
+        assertTrue(retryPolicy.shouldRetry(1, 503, false));
+        assertTrue(retryPolicy.shouldRetry(1, 503, true));
+        assertTrue(RetryPolicy.isRejected(429));
+        assertFalse(RetryPolicy.isRejected(502));
+    }
+
+    @Test
+    public void retriesGatewayErrorsOnlyForIdempotentRequests() {
+        assertTrue(retryPolicy.shouldRetry(1, 502, true));
+        assertTrue(retryPolicy.shouldRetry(1, 504, true));
+        assertFalse(retryPolicy.shouldRetry(1, 502, false));
+        assertFalse(retryPolicy.shouldRetry(1, 504, false));
+        assertFalse(retryPolicy.shouldRetry(1, 500, true));
+        assertFalse(retryPolicy.shouldRetry(1, 400, true));
+    }
+
+    @Test
+    public void retriesRequestsWhichWereNotSentForEveryVerb() {
+        assertTrue(retryPolicy.shouldRetry(1, new ConnectException(), false));
+        assertTrue(retryPolicy.shouldRetry(1, new ConnectTimeoutException(), false));
+        assertTrue(retryPolicy.shouldRetry(1, new SocketTimeoutException(), true));
+        assertFalse(retryPolicy.shouldRetry(1, new SocketTimeoutException(), false));
+        assertFalse(retryPolicy.shouldRetry(1, new IOException("Connection reset"), false));
+    }
+
+    @Test
+    public void doesNotRetryPermanentFailures() {
+        assertFalse(retryPolicy.shouldRetry(1, new UnknownHostException(), true));
+        assertFalse(retryPolicy.shouldRetry(1, new SSLException("handshake"), true));
+    }
+
+    @Test
+    public void givesUpAfterTheLastAttempt() {
+        assertTrue(retryPolicy.shouldRetry(4, 503, true));
+        assertFalse(retryPolicy.shouldRetry(5, 503, true));
+        assertFalse(retryPolicy.shouldRetry(5, new ConnectException(), true));
+        assertEquals(1, new RetryPolicy(0, 0, 0, 0).getMaxAttempts());
+    }
+
+    private static HttpResponse response(String retryAfter) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+        if (retryAfter != null) {
+            response.addHeader("Retry-After", retryAfter);
+        }
+        return response;
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value + " is not between " + min + " and " + max, value >= min && value <= max);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.api;
+
+import com.intland.jenkins.dto.PluginConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestCaseMappingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTheWrittenMapping() {
+        TestCaseMapping mapping = new TestCaseMapping(new File(folder.getRoot(), "mapping"));
+        Map<String, Integer> testCaseIds = new HashMap<>();
+        testCaseIds.put("com.a.T.test", 10);
+        testCaseIds.put("com.a.T.\u00e9t\u00e9", 11);
+        mapping.write("fingerprint", testCaseIds);
+
+        assertEquals(testCaseIds, new TestCaseMapping(new File(folder.getRoot(), "mapping")).read("fingerprint"));
+    }
+
+    @Test
+    public void ignoresTheMappingOfOtherTests() {
+        TestCaseMapping mapping = new TestCaseMapping(new File(folder.getRoot(), "mapping"));
+        mapping.write("fingerprint", new HashMap<String, Integer>());
+
+        assertNull(mapping.read("other"));
+        assertNotNull(mapping.read("fingerprint"));
+    }
+
+    @Test
+    public void readsNothingWithoutFile() {
+        assertNull(new TestCaseMapping(new File(folder.getRoot(), "mapping")).read("fingerprint"));
+    }
+
+    @Test
+    public void readsNothingFromACorruptedFile() throws IOException {
+        File file = folder.newFile("mapping");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        assertNull(new TestCaseMapping(file).read("fingerprint"));
+    }
+
+    @Test
+    public void dropsAnInvalidatedMapping() {
+        TestCaseMapping mapping = new TestCaseMapping(new File(folder.getRoot(), "mapping"));
+        mapping.write("fingerprint", new HashMap<String, Integer>());
+        mapping.invalidate();
+
+        assertNull(mapping.read("fingerprint"));
+        assertFalse(new File(folder.getRoot(), "mapping").exists());
+    }
+
+    @Test
+    public void fingerprintsTheTestNamesInAnyOrderAndTheTrackers() {
+        PluginConfiguration pluginConfiguration = new PluginConfiguration("https://codebeamer.example.com/cb", null);
+        pluginConfiguration.setTestCaseTrackerId(12);
+        String fingerprint = TestCaseMapping.fingerprint(Arrays.asList("a.T1", "b.T2"), pluginConfiguration);
+
+        assertEquals(fingerprint, TestCaseMapping.fingerprint(Arrays.asList("b.T2", "a.T1"), pluginConfiguration));
+        assertNotEquals(fingerprint, TestCaseMapping.fingerprint(Arrays.asList("a.T1", "b.T3"), pluginConfiguration));
+        assertNotEquals(fingerprint, TestCaseMapping.fingerprint(Arrays.asList("a.T1b.T2"), pluginConfiguration));
+
+        pluginConfiguration.setTestCaseTrackerId(13);
+        assertNotEquals(fingerprint, TestCaseMapping.fingerprint(Arrays.asList("a.T1", "b.T2"), pluginConfiguration));
+    }
+}
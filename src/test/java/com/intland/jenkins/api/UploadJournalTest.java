@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.api;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UploadJournalTest {
+    private static final String FINGERPRINT = UploadJournal.fingerprint(Arrays.asList("a.T1", "a.T2", "b.T3"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsAJournalWithoutFileInMemory() throws IOException {
+        try (UploadJournal journal = UploadJournal.open(null, FINGERPRINT)) {
+            journal.testSetCreated(10);
+            journal.batchCreated(0, new Integer[]{11, 12});
+
+            assertTrue(journal.isResumed());
+            assertTrue(journal.isUploaded(1));
+            assertFalse(journal.isUploaded(2));
+            assertEquals(1, journal.getIncompleteBatches().size());
+        }
+    }
+
+    @Test
+    public void resumesTheBatchesOfAnInterruptedUpload() throws IOException {
+        File file = folder.newFile("journal");
+        try (UploadJournal journal = UploadJournal.open(file, FINGERPRINT)) {
+            assertFalse(journal.isResumed());
+            journal.testSetCreated(10);
+            journal.parentTestRunCreated(20);
+            journal.batchCreated(0, new Integer[]{100, 101});
+            journal.batchClosed(0);
+            journal.batchReported(0, 1);
+            journal.batchCreated(2, new Integer[]{102, 103});
+            journal.batchCreated(4, new Integer[]{104});
+            journal.batchClosed(4);
+        }
+        append(file, "runs 5 7 15");
+
+        try (UploadJournal journal = UploadJournal.open(file, FINGERPRINT)) {
+            assertTrue(journal.isResumed());
+            assertEquals(Integer.valueOf(10), journal.getTestSetId());
+            assertEquals(Integer.valueOf(20), journal.getParentTestRunId());
+            assertEquals(5, journal.getUploadedCount());
+            assertFalse(journal.isUploaded(5));
+            assertEquals(1, journal.getReportedBugCount());
+
+            Map<Integer, Integer[]> incompleteBatches = journal.getIncompleteBatches();
+            assertEquals(Arrays.asList(2, 4), Arrays.asList(incompleteBatches.keySet().toArray()));
+            assertArrayEquals(new Integer[]{102, 103}, incompleteBatches.get(2));
+            assertFalse(journal.isClosed(2));
+            assertTrue(journal.isClosed(4));
+        }
+    }
+
+    @Test
+    public void discardsTheJournalOfOtherTestResults() throws IOException {
+        File file = folder.newFile("journal");
+        try (UploadJournal journal = UploadJournal.open(file, FINGERPRINT)) {
+            journal.testSetCreated(10);
+            journal.batchCreated(0, new Integer[]{100});
+        }
+
+        try (UploadJournal journal = UploadJournal.open(file, UploadJournal.fingerprint(Arrays.asList("a.T1")))) {
+            assertFalse(journal.isResumed());
+            assertEquals(0, journal.getUploadedCount());
+            assertTrue(journal.getIncompleteBatches().isEmpty());
+        }
+    }
+
+    @Test
+    public void discardsTheJournalOfAFinishedUpload() throws IOException {
+        File file = folder.newFile("journal");
+        try (UploadJournal journal = UploadJournal.open(file, FINGERPRINT)) {
+            journal.testSetCreated(10);
+            journal.batchCreated(0, new Integer[]{100, 101, 102});
+            journal.batchReported(0, 2);
+            journal.finished();
+        }
+
+        try (UploadJournal journal = UploadJournal.open(file, FINGERPRINT)) {
+            assertFalse(journal.isResumed());
+            assertEquals(0, journal.getUploadedCount());
+            assertEquals(0, journal.getReportedBugCount());
+        }
+    }
+
+    @Test
+    public void readsBatchesWithoutRunIdsAsComplete() throws IOException {
+        File file = folder.newFile("journal");
+        append(file, "tests " + FINGERPRINT + "\ntestSet 10\nbatch 0 3\n");
+
+        try (UploadJournal journal = UploadJournal.open(file, FINGERPRINT)) {
+            assertTrue(journal.isResumed());
+            assertEquals(3, journal.getUploadedCount());
+            assertTrue(journal.getIncompleteBatches().isEmpty());
+        }
+    }
+
+    private static void append(File file, String text) throws IOException {
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(Charset.forName("UTF-8")));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.dto;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ErrorDetailTest {
+
+    @Test
+    public void keepsAShortTextUnchanged() {
+        ErrorDetail errorDetail = ErrorDetail.of("expected:<1> but was:<0>", "java.lang.AssertionError\n\tat com.a.T.test(T.java:10)");
+
+        assertEquals("expected:<1> but was:<0>\njava.lang.AssertionError\n\tat com.a.T.test(T.java:10)", errorDetail.toString());
+        assertEquals(errorDetail.toString().length(), errorDetail.estimateLength());
+    }
+
+    @Test
+    public void returnsTheMessageWithoutStackTrace() {
+        assertEquals("failed", ErrorDetail.of("failed", null).toString());
+        assertEquals("null", ErrorDetail.of(null, null).toString());
+    }
+
+    @Test
+    public void keepsTheTopFramesAndTheRootCauseOfALongStackTrace() {
+        StringBuilder stackTrace = new StringBuilder("java.lang.IllegalStateException: outer");
+        appendFrames(stackTrace, 2000);
+        stackTrace.append("\nCaused by: java.io.IOException: root");
+        appendFrames(stackTrace, 2000);
+        ErrorDetail errorDetail = ErrorDetail.of("outer", stackTrace.toString());
+
+        String text = errorDetail.toString();
+        assertTrue(text.length() <= ErrorDetail.MAX_LENGTH);
+        assertTrue(text.startsWith("outer\njava.lang.IllegalStateException: outer\n"));
+        assertTrue(text.contains("\nCaused by: java.io.IOException: root\n"));
+        assertTrue(text.contains("lines omitted"));
+        assertTrue(errorDetail.estimateLength() >= text.length());
+    }
+
+    @Test
+    public void cutsALongMessage() {
+        StringBuilder message = new StringBuilder();
+        while (message.length() <= ErrorDetail.MAX_LENGTH) {
+            message.append("expected:<1> but was:<0> ");
+        }
+        ErrorDetail errorDetail = ErrorDetail.of(message.toString(), null);
+
+        String text = errorDetail.toString();
+        assertEquals(ErrorDetail.MAX_LENGTH, text.length());
+        assertTrue(text.endsWith("..."));
+        assertEquals(ErrorDetail.MAX_LENGTH, errorDetail.estimateLength());
+    }
+
+    private static void appendFrames(StringBuilder stackTrace, int count) {
+        for (int i = 0; i < count; i++) {
+            stackTrace.append("\n\tat com.example.Frame").append(i).append(".call(Frame").append(i).append(".java:10)");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.dto;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NodeMappingTest {
+
+    @Test
+    public void resolvesPathsSegmentBySegment() {
+        NodeMapping mapping = new NodeMapping();
+        int com = mapping.add(NodeMapping.ROOT, "com", 1);
+        int example = mapping.add(com, "example", 2);
+        int test = mapping.add(example, "FooTest", 3);
+
+        assertEquals(Integer.valueOf(3), mapping.getId("com.example.FooTest"));
+        assertEquals(Integer.valueOf(2), mapping.getId("com.example"));
+        assertNull(mapping.getId("com.example.BarTest"));
+        assertNull(mapping.getId(""));
+
+        assertEquals(test, mapping.getChild(example, "FooTest"));
+        assertEquals(NodeMapping.NONE, mapping.getChild(example, "BarTest"));
+        assertEquals(example, mapping.getParent(test));
+        assertEquals("FooTest", mapping.getSegment(test));
+        assertEquals("com.example.FooTest", mapping.getPath(Integer.valueOf(3)));
+        assertEquals(3, mapping.getItemCount());
+    }
+
+    @Test
+    public void keepsTheLowestIdOfASegment() {
+        NodeMapping mapping = new NodeMapping();
+        int node = mapping.add(NodeMapping.ROOT, "com", 5);
+        assertEquals(node, mapping.add(NodeMapping.ROOT, "com", 3));
+        assertEquals(node, mapping.add(NodeMapping.ROOT, "com", 7));
+
+        assertEquals(Integer.valueOf(3), mapping.getId(node));
+        assertEquals(node, mapping.getNode(5));
+        assertEquals(node, mapping.getNode(7));
+        assertEquals(3, mapping.getItemCount());
+    }
+
+    @Test
+    public void keepsItemsWithUnknownParentOutOfThePaths() {
+        NodeMapping mapping = new NodeMapping();
+        mapping.addItem(10, 99, "orphan");
+
+        assertNotEquals(NodeMapping.NONE, mapping.getNode(10));
+        assertNull(mapping.getPath(Integer.valueOf(10)));
+        assertNull(mapping.getId("orphan"));
+
+        final Map<Integer, Integer> parentIds = new HashMap<>();
+        mapping.visitItems(new NodeMapping.ItemVisitor() {
+            @Override
+            public void visit(int id, Integer parentId, String name) {
+                parentIds.put(id, parentId);
+            }
+        });
+        assertEquals(Integer.valueOf(-1), parentIds.get(10));
+    }
+
+    @Test
+    public void addsItemsBelowTheirParentItem() {
+        NodeMapping mapping = new NodeMapping();
+        mapping.addItem(1, null, "com");
+        mapping.addItem(2, 1, "example");
+
+        assertEquals("com.example", mapping.getPath(Integer.valueOf(2)));
+        assertEquals(NodeMapping.NONE, mapping.getNode(3));
+        assertNull(mapping.getPath(Integer.valueOf(3)));
+    }
+
+    @Test
+    public void findsEveryChildOfALargeTree() {
+        NodeMapping mapping = new NodeMapping();
+        int id = 1;
+        for (int i = 0; i < 100; i++) {
+            int parent = mapping.add(NodeMapping.ROOT, "p" + i, id++);
+            for (int j = 0; j < 50; j++) {
+                mapping.add(parent, "Test" + j, id++);
+            }
+        }
+
+        assertEquals(5100, mapping.getItemCount());
+        id = 1;
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(id++), mapping.getId("p" + i));
+            for (int j = 0; j < 50; j++) {
+                assertEquals(Integer.valueOf(id++), mapping.getId("p" + i + ".Test" + j));
+            }
+        }
+    }
+
+    @Test
+    public void visitsParentsBeforeChildren() {
+        NodeMapping mapping = new NodeMapping();
+        int com = mapping.add(NodeMapping.ROOT, "com", 1);
+        int example = mapping.add(com, "example", 2);
+        mapping.add(example, "FooTest", 3);
+        mapping.add(NodeMapping.ROOT, "org", 4);
+
+        final List<String> paths = new ArrayList<>();
+        mapping.visit("com", new NodeMapping.PathVisitor() {
+            @Override
+            public void visit(int id, String path) {
+                paths.add(id + " " + path);
+            }
+        });
+
+        assertEquals("[1 com, 2 com.example, 3 com.example.FooTest]", paths.toString());
+    }
+
+    @Test
+    public void visitsItemsWithTheirParentItem() {
+        NodeMapping mapping = new NodeMapping();
+        mapping.addItem(1, null, "com");
+        mapping.addItem(2, 1, "example");
+
+        final Map<Integer, String> items = new HashMap<>();
+        mapping.visitItems(new NodeMapping.ItemVisitor() {
+            @Override
+            public void visit(int id, Integer parentId, String name) {
+                items.put(id, parentId + " " + name);
+            }
+        });
+
+        assertEquals("null com", items.get(1));
+        assertEquals("1 example", items.get(2));
+        assertEquals(2, items.size());
+    }
+}
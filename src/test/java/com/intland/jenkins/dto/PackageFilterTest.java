@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.dto;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class PackageFilterTest {
+    private static final String[] NONE = new String[0];
+
+    private final PackageFilter filter = new PackageFilter(
+            new String[]{"com.a", " org.b "},
+            new String[]{"com.a.skip", "glob:org.*.x"},
+            new String[]{"com.a.deep", " com.a", "regex:org\\.b"});
+
+    @Test
+    public void appliesIncludesExcludesAndTruncates() {
+        assertResults(filter);
+    }
+
+    @Test
+    public void includesEveryPackageWithoutIncludes() {
+        PackageFilter filter = new PackageFilter(NONE, new String[]{"com.skip"}, NONE);
+
+        assertEquals("net.T", filter.apply("net.T"));
+        assertTrue(filter.isAllowed("com.a.T"));
+        assertFalse(filter.isAllowed("com.skip.T"));
+    }
+
+    @Test
+    public void matchesGlobStarWithinAPackage() {
+        PackageFilter filter = new PackageFilter(NONE, new String[]{"glob:com.*.T"}, new String[]{"glob:org.**.deep"});
+
+        assertNull(filter.apply("com.a.T"));
+        assertEquals("com.a.b.T", filter.apply("com.a.b.T"));
+        assertEquals("T", filter.apply("org.a.b.deep.T"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void rejectsAnInvalidRegex() {
+        new PackageFilter(new String[]{"regex:com.(a"}, NONE, NONE);
+    }
+
+    @Test
+    public void compilesTheRulesAgainAfterDeserialization() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(filter);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertResults((PackageFilter) in.readObject());
+        }
+    }
+
+    private static void assertResults(PackageFilter filter) {
+        assertEquals("T", filter.apply("com.a.T"));
+        assertEquals("T", filter.apply("com.a.deep.T"));
+        assertNull(filter.apply("com.a.skip.T"));
+        assertNull(filter.apply("org.b.x.T"));
+        assertEquals("y.T", filter.apply("org.b.y.T"));
+        assertNull(filter.apply("net.T"));
+    }
+}
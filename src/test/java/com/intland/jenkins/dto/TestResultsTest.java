@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Intland Software (support@intland.com)
+ */
+package com.intland.jenkins.dto;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestResultsTest {
+
+    @Test
+    public void keepsItemsSummaryAndStatus() throws IOException, ClassNotFoundException {
+        TestResultItem passed = new TestResultItem("com.a.T.passed", 0.5f, true, "PASSED");
+        TestResultItem failed = new TestResultItem("com.a.T.failed", 1.25f, false, "FAILED");
+        failed.setErrorDetail(ErrorDetail.of("expected:<1> but was:<0>", "java.lang.AssertionError\n\tat com.a.T.failed(T.java:10)"));
+        TestResultItem skipped = new TestResultItem("com.a.T.\u00e9t\u00e9", 0f, true, null);
+        TestResults testResults = new TestResults(Arrays.asList(passed, failed, skipped, passed), new TestSummary(4, 3, 1), "FAILED");
+
+        TestResults copy = roundTrip(testResults);
+
+        assertEquals("FAILED", copy.getStatus());
+        assertEquals(4, copy.getTestSummary().getTestCount());
+        assertEquals(3, copy.getTestSummary().getSuccessCount());
+        assertEquals(1, copy.getTestSummary().getFailCount());
+
+        List<TestResultItem> items = toList(copy);
+        assertEquals(4, items.size());
+        assertItem(passed, items.get(0));
+        assertItem(failed, items.get(1));
+        assertItem(skipped, items.get(2));
+        assertItem(passed, items.get(3));
+        assertEquals(failed.getErrorDetail().toString(), items.get(1).getErrorDetail().toString());
+        assertNull(items.get(0).getErrorDetail());
+    }
+
+    @Test
+    public void keepsEmptyResults() throws IOException, ClassNotFoundException {
+        TestResults copy = roundTrip(new TestResults(new ArrayList<TestResultItem>(), new TestSummary(0, 0, 0), null));
+
+        assertNull(copy.getStatus());
+        assertEquals(0, copy.getTestSummary().getTestCount());
+        assertFalse(copy.iterator().hasNext());
+    }
+
+    @Test
+    public void keepsErrorDetailsLongerThanWriteUtf() throws IOException, ClassNotFoundException {
+        StringBuilder message = new StringBuilder();
+        while (message.length() < ErrorDetail.MAX_LENGTH) {
+            message.append("\u00fcberlauf ");
+        }
+        TestResultItem failed = new TestResultItem("com.a.T.failed", 1f, false, "FAILED");
+        failed.setErrorDetail(ErrorDetail.of(message.toString(), null));
+
+        TestResults copy = roundTrip(new TestResults(Arrays.asList(failed), new TestSummary(1, 0, 1), "FAILED"));
+
+        assertEquals(failed.getErrorDetail().toString(), copy.iterator().next().getErrorDetail().toString());
+    }
+
+    private static TestResults roundTrip(TestResults testResults) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(testResults);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (TestResults) in.readObject();
+        }
+    }
+
+    private static List<TestResultItem> toList(TestResults testResults) {
+        List<TestResultItem> items = new ArrayList<>();
+        for (Iterator<TestResultItem> iterator = testResults.iterator(); iterator.hasNext(); ) {
+            items.add(iterator.next());
+        }
+        return items;
+    }
+
+    private static void assertItem(TestResultItem expected, TestResultItem actual) {
+        assertEquals(expected.getFullName(), actual.getFullName());
+        assertEquals(Float.valueOf(expected.getDuration()), Float.valueOf(actual.getDuration()));
+        assertEquals(expected.isSuccessful(), actual.isSuccessful());
+        assertEquals(expected.getResult(), actual.getResult());
+    }
+}